@@ -0,0 +1,108 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.ArrayList;
+import java.util.List;
+
+// A fixed size ring buffer of call records. Once it's full the oldest records
+// are overwritten, so memory use stays flat no matter how many calls a build
+// makes. The total number of calls ever added is still tracked.
+public class CallHistory
+{
+  public final static int DEFAULT_CAPACITY = 512;
+
+  private final CallRecord[] records;
+  private int next;
+  private int size;
+  private long total;
+
+  public CallHistory()
+  {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public CallHistory(final int capacity)
+  {
+    this.records = new CallRecord[Math.max(1, capacity)];
+  }
+
+  public synchronized void add(final CallRecord record)
+  {
+    records[next] = record;
+    next = (next + 1) % records.length;
+    size = Math.min(size + 1, records.length);
+    total += 1;
+  }
+
+  public void addAll(final CallHistory history)
+  {
+    // Copy first, so two histories adding to each other can't deadlock.
+    List<CallRecord> calls = history.toList();
+    long dropped = history.getTotal() - calls.size();
+    synchronized (this) {
+      for (CallRecord record : calls) {
+        add(record);
+      }
+      total += dropped;
+    }
+  }
+
+  // The records still held, oldest first.
+  public synchronized List<CallRecord> toList()
+  {
+    List<CallRecord> list = new ArrayList<CallRecord>(size);
+    int start = (next - size + records.length) % records.length;
+    for (int i = 0; i < size; ++i) {
+      list.add(records[(start + i) % records.length]);
+    }
+    return list;
+  }
+
+  public synchronized int size()
+  {
+    return size;
+  }
+
+  public synchronized long getTotal()
+  {
+    return total;
+  }
+
+  public int getCapacity()
+  {
+    return records.length;
+  }
+
+  public synchronized void clear()
+  {
+    for (int i = 0; i < records.length; ++i) {
+      records[i] = null;
+    }
+    next = 0;
+    size = 0;
+    total = 0;
+  }
+}
@@ -0,0 +1,86 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+
+// A compact summary of a call made to Mber. Query strings are dropped, since
+// they can hold sensitive data like tokens, and response bodies are only kept
+// for failed calls where they help explain what went wrong.
+public class CallRecord
+{
+  private final static int MAX_BODY = 4 * 1024;
+
+  public final String method;
+  public final String path;
+  public final int code;
+  public final long latencyMillis;
+  public final long requestBytes;
+  public final long responseBytes;
+  public final String body;
+
+  public CallRecord(final String method, final String path, final int code, final long latencyMillis, final long requestBytes, final long responseBytes, final String body)
+  {
+    this.method = method;
+    this.path = path;
+    this.code = code;
+    this.latencyMillis = latencyMillis;
+    this.requestBytes = requestBytes;
+    this.responseBytes = responseBytes;
+    this.body = body;
+  }
+
+  public static CallRecord fromCall(final HTTParty.Call call)
+  {
+    String path = (call.uri != null) ? call.uri.toString() : "";
+    int offset = path.indexOf('?');
+    if (offset >= 0) {
+      path = path.substring(0, offset);
+    }
+    return new CallRecord(call.method, path, call.code, call.latencyMillis, call.requestBytes, call.responseBytes, failureBody(call));
+  }
+
+  public boolean isFailed()
+  {
+    return body != null;
+  }
+
+  private static String failureBody(final HTTParty.Call call)
+  {
+    if (call.code < 400 && (call.json == null || !MberJSON.isFailed(call.json))) {
+      return null;
+    }
+    String body = (call.json != null) ? call.json.toString() : call.body;
+    if (body == null) {
+      return "";
+    }
+    return (body.length() > MAX_BODY) ? body.substring(0, MAX_BODY) : body;
+  }
+
+  @Override
+  public String toString()
+  {
+    return method + " " + path + " - " + code + " (" + latencyMillis + " ms)";
+  }
+}
@@ -0,0 +1,183 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+// Stops sending requests to Mber while it's having trouble. Recent calls are
+// tracked in a sliding window, and once enough of them fail or are too slow
+// the circuit opens and calls fail right away. After a cool down one trial
+// call is let through (half open). If it works the circuit closes again,
+// otherwise it goes back to open for another cool down.
+public class CircuitBreaker
+{
+  public enum State { CLOSED, OPEN, HALF_OPEN }
+
+  private static final int WINDOW_SIZE = 20;
+  private static final int MIN_CALLS = 10;
+  private static final int FAILURE_RATE_PERCENT = 50;
+  private static final long SLOW_CALL_MILLIS = 10000;
+  private static final long OPEN_MILLIS = 30000;
+
+  // Breakers are shared by every client talking to the same Mber URL.
+  private static final ConcurrentMap<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<String, CircuitBreaker>();
+
+  public static CircuitBreaker forKey(final String key)
+  {
+    CircuitBreaker breaker = BREAKERS.get(key);
+    if (breaker == null) {
+      breaker = new CircuitBreaker(OPEN_MILLIS);
+      CircuitBreaker existing = BREAKERS.putIfAbsent(key, breaker);
+      if (existing != null) {
+        breaker = existing;
+      }
+    }
+    return breaker;
+  }
+
+  private final long openMillis;
+  private final boolean[] window = new boolean[WINDOW_SIZE];
+  private int calls;
+  private int failures;
+  private int next;
+  private State state = State.CLOSED;
+  private long openedAt;
+  private boolean trialInFlight;
+
+  public CircuitBreaker(final long openMillis)
+  {
+    this.openMillis = openMillis;
+  }
+
+  // Returns true if a call may go out. Callers that get true must record the
+  // outcome or cancel the call, otherwise a half open circuit will never let another call through.
+  public synchronized boolean allowRequest()
+  {
+    if (state == State.OPEN) {
+      if (now() - openedAt < openMillis) {
+        return false;
+      }
+      state = State.HALF_OPEN;
+      trialInFlight = false;
+    }
+    if (state == State.HALF_OPEN) {
+      if (trialInFlight) {
+        return false;
+      }
+      trialInFlight = true;
+    }
+    return true;
+  }
+
+  public synchronized void record(final boolean success, final long latencyMillis)
+  {
+    final boolean failed = !success || latencyMillis >= SLOW_CALL_MILLIS;
+    if (state == State.HALF_OPEN) {
+      trialInFlight = false;
+      if (failed) {
+        open();
+      }
+      else {
+        close();
+      }
+      return;
+    }
+    if (state == State.OPEN) {
+      return;
+    }
+    if (calls == WINDOW_SIZE && window[next]) {
+      failures -= 1;
+    }
+    window[next] = failed;
+    next = (next + 1) % WINDOW_SIZE;
+    calls = Math.min(calls + 1, WINDOW_SIZE);
+    if (failed) {
+      failures += 1;
+    }
+    if (calls >= MIN_CALLS && failures * 100 >= calls * FAILURE_RATE_PERCENT) {
+      open();
+    }
+  }
+
+  // Releases a call that was let through but shouldn't count either way, like
+  // one cut short by a canceled build. A half open circuit lets another trial
+  // call through instead.
+  public synchronized void cancel()
+  {
+    if (state == State.HALF_OPEN) {
+      trialInFlight = false;
+    }
+  }
+
+  public synchronized State getState()
+  {
+    // Report a finished cool down as half open, even before the trial call is made.
+    if (state == State.OPEN && now() - openedAt >= openMillis) {
+      return State.HALF_OPEN;
+    }
+    return state;
+  }
+
+  public synchronized int getFailureRatePercent()
+  {
+    return (calls > 0) ? failures * 100 / calls : 0;
+  }
+
+  // How long until an open circuit lets a trial call through.
+  public synchronized long getRetryInMillis()
+  {
+    if (state != State.OPEN) {
+      return 0;
+    }
+    return Math.max(0, openMillis - (now() - openedAt));
+  }
+
+  public synchronized void reset()
+  {
+    close();
+  }
+
+  private void open()
+  {
+    state = State.OPEN;
+    openedAt = now();
+  }
+
+  private void close()
+  {
+    state = State.CLOSED;
+    calls = 0;
+    failures = 0;
+    next = 0;
+    trialInFlight = false;
+  }
+
+  private static long now()
+  {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+}
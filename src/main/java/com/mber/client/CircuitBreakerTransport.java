@@ -0,0 +1,106 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectTimeoutException;
+
+// Sends requests through another transport while its circuit breaker is
+// closed, and fails fast without touching the network while it's open.
+public class CircuitBreakerTransport implements Transport
+{
+  private final Transport transport;
+  private final CircuitBreaker breaker;
+
+  public CircuitBreakerTransport(final Transport transport, final CircuitBreaker breaker)
+  {
+    this.transport = transport;
+    this.breaker = breaker;
+  }
+
+  public String getName()
+  {
+    return transport.getName();
+  }
+
+  public HTTParty.Call execute(final HttpUriRequest request, final HTTParty.BodyReader reader) throws IOException
+  {
+    if (!breaker.allowRequest()) {
+      final long retryInMillis = breaker.getRetryInMillis();
+      if (retryInMillis <= 0) {
+        // Half open, and another caller's trial request hasn't come back yet.
+        throw new IOException(String.format("Mber is unavailable at %s. Waiting on a trial request before sending more.", request.getURI().getHost()));
+      }
+      long seconds = (retryInMillis + 999) / 1000;
+      throw new IOException(String.format("Mber is unavailable at %s. Skipping requests for %d seconds.", request.getURI().getHost(), seconds));
+    }
+    final long start = System.currentTimeMillis();
+    // Only time how long Mber takes to answer. Reading a big response body is
+    // slow because of its size, not because Mber is struggling.
+    final long[] answeredAt = { 0 };
+    final HTTParty.BodyReader timedReader = new HTTParty.BodyReader() {
+      public HTTParty.Call read(final HttpUriRequest request, final int code, final InputStream content) throws IOException
+      {
+        answeredAt[0] = System.currentTimeMillis();
+        return reader.read(request, code, content);
+      }
+    };
+    boolean success = false;
+    boolean canceled = false;
+    try {
+      HTTParty.Call call = transport.execute(request, timedReader);
+      // Client errors mean Mber is up and answering, so only count server errors.
+      success = call.code < 500 && call.code != 429;
+      return call;
+    }
+    catch (IOException e) {
+      canceled = isCanceled(e);
+      throw e;
+    }
+    finally {
+      if (canceled) {
+        breaker.cancel();
+      }
+      else {
+        final long end = (answeredAt[0] > 0) ? answeredAt[0] : System.currentTimeMillis();
+        breaker.record(success, end - start);
+      }
+    }
+  }
+
+  // Calls cut short by a canceled build say nothing about Mber's health. Timeouts
+  // are interrupted IO too, but those still count as failures.
+  private static boolean isCanceled(final IOException e)
+  {
+    if (e instanceof SocketTimeoutException || e instanceof ConnectTimeoutException) {
+      return false;
+    }
+    return e instanceof InterruptedIOException || Thread.currentThread().isInterrupted();
+  }
+}
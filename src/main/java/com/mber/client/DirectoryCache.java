@@ -0,0 +1,152 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Remembers directory IDs for folder paths, so walking a path Mber already
+// told us about doesn't take any round trips. Paths are grouped by scope, which
+// is the Mber URL and application they belong to. Entries expire after a while
+// in case folders are changed outside of Jenkins, and the least recently used
+// ones are evicted once the cache is full.
+public class DirectoryCache
+{
+  public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+  private static class Entry
+  {
+    final String directoryId;
+    final long expiresAt;
+    Entry(final String directoryId, final long expiresAt)
+    {
+      this.directoryId = directoryId;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final long ttlMillis;
+  private final LinkedHashMap<String, Entry> entries;
+
+  public DirectoryCache()
+  {
+    this(DEFAULT_TTL_MILLIS, DEFAULT_MAX_ENTRIES);
+  }
+
+  public DirectoryCache(final long ttlMillis, final int maxEntries)
+  {
+    this.ttlMillis = ttlMillis;
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest)
+      {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  // Returns the directory ID for a path, or null if it isn't known.
+  public synchronized String get(final String scope, final String path)
+  {
+    final String key = key(scope, path);
+    final Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (now() >= entry.expiresAt) {
+      entries.remove(key);
+      return null;
+    }
+    return entry.directoryId;
+  }
+
+  public synchronized void put(final String scope, final String path, final String directoryId)
+  {
+    if (directoryId == null || directoryId.isEmpty()) {
+      return;
+    }
+    entries.put(key(scope, path), new Entry(directoryId, now() + ttlMillis));
+  }
+
+  // Forgets a directory that no longer exists, along with everything under it.
+  public synchronized void invalidate(final String scope, final String directoryId)
+  {
+    final List<String> prefixes = new ArrayList<String>();
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      if (entry.getValue().directoryId.equals(directoryId) && entry.getKey().startsWith(key(scope, ""))) {
+        prefixes.add(entry.getKey());
+      }
+    }
+    final Iterator<String> keys = entries.keySet().iterator();
+    while (keys.hasNext()) {
+      final String key = keys.next();
+      for (String prefix : prefixes) {
+        if (key.startsWith(prefix)) {
+          keys.remove();
+          break;
+        }
+      }
+    }
+  }
+
+  // Forgets the exact entries for an ID. Keys that aren't paths, like project
+  // aliases, use this since one alias can be the prefix of another.
+  public synchronized void remove(final String scope, final String directoryId)
+  {
+    final String prefix = key(scope, "");
+    final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while (iterator.hasNext()) {
+      final Map.Entry<String, Entry> entry = iterator.next();
+      if (entry.getValue().directoryId.equals(directoryId) && entry.getKey().startsWith(prefix)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  public synchronized int size()
+  {
+    return entries.size();
+  }
+
+  public synchronized void clear()
+  {
+    entries.clear();
+  }
+
+  private static String key(final String scope, final String path)
+  {
+    return scope + "\n" + path;
+  }
+
+  private static long now()
+  {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+}
@@ -0,0 +1,129 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.Iterator;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+// A compact name to document ID index for the files in one Mber folder. It's
+// an open addressing hash table over plain arrays with linear probing, so a
+// folder with thousands of files costs two string arrays instead of a tree of
+// JSON objects, and each lookup is a single probe sequence. Mber doesn't allow
+// duplicate file names in a folder, so names map to exactly one document.
+public class DocumentIndex
+{
+  private String[] names;
+  private String[] ids;
+  private int size;
+
+  public DocumentIndex()
+  {
+    this(16);
+  }
+
+  public DocumentIndex(final int expected)
+  {
+    int capacity = 16;
+    while (capacity < expected * 2) {
+      capacity <<= 1;
+    }
+    this.names = new String[capacity];
+    this.ids = new String[capacity];
+  }
+
+  // Builds an index from the "documents" array of a directory read.
+  public static DocumentIndex fromDocuments(final JSONArray documents)
+  {
+    DocumentIndex index = new DocumentIndex(documents.size());
+    Iterator<JSONObject> itr = documents.iterator();
+    while (itr.hasNext()) {
+      JSONObject item = itr.next();
+      if (item.has("name") && item.has("documentId")) {
+        index.put(item.getString("name"), item.getString("documentId"));
+      }
+    }
+    return index;
+  }
+
+  public synchronized String get(final String name)
+  {
+    int slot = find(names, name);
+    return (names[slot] != null) ? ids[slot] : null;
+  }
+
+  public synchronized void put(final String name, final String documentId)
+  {
+    if (name == null || documentId == null) {
+      return;
+    }
+    if ((size + 1) * 2 > names.length) {
+      resize(names.length * 2);
+    }
+    int slot = find(names, name);
+    if (names[slot] == null) {
+      names[slot] = name;
+      size += 1;
+    }
+    ids[slot] = documentId;
+  }
+
+  public synchronized int size()
+  {
+    return size;
+  }
+
+  // Returns the slot holding the name, or the empty slot where it belongs.
+  private static int find(final String[] names, final String name)
+  {
+    final int mask = names.length - 1;
+    int slot = spread(name.hashCode()) & mask;
+    while (names[slot] != null && !names[slot].equals(name)) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void resize(final int capacity)
+  {
+    final String[] oldNames = names;
+    final String[] oldIds = ids;
+    names = new String[capacity];
+    ids = new String[capacity];
+    for (int i = 0; i < oldNames.length; ++i) {
+      if (oldNames[i] != null) {
+        int slot = find(names, oldNames[i]);
+        names[slot] = oldNames[i];
+        ids[slot] = oldIds[i];
+      }
+    }
+  }
+
+  // File names often share long prefixes, so mix the hash's high bits into the low ones.
+  private static int spread(final int hash)
+  {
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+// Walks the documents matching a set of tags one page at a time, so only a
+// single page is ever held in memory. Servers that don't support paging send
+// every result at once and ignore the offset. That's detected either by
+// getting more results than asked for, or by a later page starting with the
+// same document as the first one. Either way iteration stops after one pass.
+// If a page fails to load, iteration stops and getFailure has the response.
+public class DocumentIterator implements Iterator<JSONObject>
+{
+  public static final int DEFAULT_PAGE_SIZE = 100;
+
+  private final MberClient mber;
+  private final String[] tags;
+  private final int pageSize;
+  private Iterator<JSONObject> page;
+  private int offset = 0;
+  private boolean lastPage = false;
+  private String firstDocumentId;
+  private JSONObject failure;
+
+  public DocumentIterator(final MberClient mber, final String[] tags, final int pageSize)
+  {
+    this.mber = mber;
+    this.tags = tags;
+    this.pageSize = (pageSize > 0) ? pageSize : DEFAULT_PAGE_SIZE;
+  }
+
+  // Override to change how pages are loaded, e.g. to retry them.
+  protected JSONObject fetchPage(final int offset, final int limit)
+  {
+    return mber.findDocumentsWithTags(tags, offset, limit);
+  }
+
+  public boolean hasNext()
+  {
+    while ((page == null || !page.hasNext()) && !lastPage) {
+      loadPage();
+    }
+    return page != null && page.hasNext();
+  }
+
+  public JSONObject next()
+  {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return page.next();
+  }
+
+  public void remove()
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  public JSONObject getFailure()
+  {
+    return failure;
+  }
+
+  private void loadPage()
+  {
+    final JSONObject response = fetchPage(offset, pageSize);
+    if (!MberJSON.isSuccess(response)) {
+      failure = (response != null) ? response : MberJSON.failed("Failed to find files with tags");
+      page = null;
+      lastPage = true;
+      return;
+    }
+    final JSONArray results = MberJSON.getArray(response, "results");
+    final String firstId = results.isEmpty() ? null : MberJSON.getString(results.getJSONObject(0), "documentId");
+    if (offset > 0 && firstId != null && firstId.equals(firstDocumentId)) {
+      // The offset was ignored, so everything was already seen on the first page.
+      page = null;
+      lastPage = true;
+      return;
+    }
+    if (offset == 0) {
+      firstDocumentId = firstId;
+    }
+    page = results.iterator();
+    offset += results.size();
+    lastPage = results.size() != pageSize;
+  }
+}
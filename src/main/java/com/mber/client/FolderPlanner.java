@@ -0,0 +1,172 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.sf.json.JSONObject;
+
+// Plans the creation of a set of Mber folders. Every target path is added to a
+// prefix tree first, so folders shared by many paths are only created once.
+// Folders are then created a level at a time starting from the root, with all
+// the folders on a level created concurrently since their parents are known.
+public class FolderPlanner
+{
+  // Folders on a level are created this many at a time.
+  private final static int FOLDER_THREADS = 8;
+
+  private static class Node
+  {
+    final String name;
+    final String alias;
+    final Map<String, Node> children = new LinkedHashMap<String, Node>();
+    JSONObject response;
+
+    Node(final String name, final String alias)
+    {
+      this.name = name;
+      this.alias = alias;
+    }
+  }
+
+  private final Node root = new Node("", "");
+  private final Map<String, Node> targets = new LinkedHashMap<String, Node>();
+  private int folders;
+
+  // Paths always start from the application root, with folders names split by forward slashes.
+  public static String normalize(String path)
+  {
+    path = path.replaceAll("//+", "/");
+    if (path.startsWith("/")) {
+      path = path.substring(1);
+    }
+    if (path.endsWith("/")) {
+      path = path.substring(0, path.length() - 1);
+    }
+    return path;
+  }
+
+  public void add(final String path)
+  {
+    if (path == null || targets.containsKey(path)) {
+      return;
+    }
+    Node node = root;
+    for (String folder : normalize(path).split("/")) {
+      Node child = node.children.get(folder);
+      if (child == null) {
+        child = new Node(folder, node.alias + folder + "/");
+        node.children.put(folder, child);
+        folders += 1;
+      }
+      node = child;
+    }
+    targets.put(path, node);
+  }
+
+  // Number of unique folders that need to exist for every path.
+  public int size()
+  {
+    return folders;
+  }
+
+  // Creates every planned folder and returns the response for each added
+  // path. Successful responses have a directoryId. If a folder fails, every
+  // path below it gets that failure, since nothing under it can be created.
+  // Folders are created on threads of their own, so they never queue behind
+  // other builds' work, and this can safely be called from any thread.
+  public Map<String, JSONObject> create(final MberClient mber)
+  {
+    if (folders == 0) {
+      return new LinkedHashMap<String, JSONObject>();
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(FOLDER_THREADS, folders), new NamedThreadFactory("Mber folder creator"));
+    try {
+      return create(mber, executor);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Map<String, JSONObject> create(final MberClient mber, final ExecutorService executor)
+  {
+    List<Node> level = new ArrayList<Node>(root.children.values());
+    Map<Node, String> parents = new HashMap<Node, String>();
+    for (Node node : level) {
+      parents.put(node, mber.getApplicationId());
+    }
+
+    while (!level.isEmpty()) {
+      List<Future<JSONObject>> responses = new ArrayList<Future<JSONObject>>(level.size());
+      for (final Node node : level) {
+        final String parent = parents.get(node);
+        responses.add(executor.submit(TransactionScope.wrap(new Callable<JSONObject>() {
+          public JSONObject call()
+          {
+            return mber.mkdir(node.name, parent, node.alias);
+          }
+        })));
+      }
+
+      List<Node> next = new ArrayList<Node>();
+      for (int i = 0; i < level.size(); ++i) {
+        Node node = level.get(i);
+        node.response = MberClient.await(responses.get(i));
+        if (MberJSON.isSuccess(node.response)) {
+          for (Node child : node.children.values()) {
+            parents.put(child, node.response.getString("directoryId"));
+            next.add(child);
+          }
+        }
+        else {
+          fail(node, node.response);
+        }
+      }
+      level = next;
+    }
+
+    Map<String, JSONObject> results = new LinkedHashMap<String, JSONObject>();
+    for (Map.Entry<String, Node> target : targets.entrySet()) {
+      results.put(target.getKey(), target.getValue().response);
+    }
+    return results;
+  }
+
+  private static void fail(final Node node, final JSONObject response)
+  {
+    for (Node child : node.children.values()) {
+      child.response = response;
+      fail(child, response);
+    }
+  }
+}
@@ -24,17 +24,21 @@ THE SOFTWARE.
 */
 
 package com.mber.client;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
-import java.net.URLEncoder;
 import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
 import net.sf.json.JSONObject;
 import org.apache.commons.io.IOUtils;
-import org.apache.http.client.HttpClient;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
@@ -42,8 +46,7 @@ import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.jenkinsci.plugins.mber.FilePartEntity;
 import org.jenkinsci.plugins.mber.LoggingFileEntity;
 import org.jenkinsci.plugins.mber.LoggingOutputStream;
 
@@ -51,18 +54,68 @@ public class HTTParty
 {
   private final static String MBER_VERSION = "2.0.x";
 
+  // Transports are stateless, so one of each is shared by every client.
+  private final static Transport POOLED_TRANSPORT = new PooledTransport();
+  private final static Transport URL_CONNECTION_TRANSPORT = new URLConnectionTransport();
+
+  // Responses that should have been JSON but weren't, like error pages from
+  // proxies, are only kept up to this many characters for error reporting.
+  private final static int MAX_NON_JSON_BODY = 64 * 1024;
+
   static public class Call
   {
     public final String method;
     public final URI uri;
     public final int code;
     public final String body;
+    public final JSONObject json;
+    public final long latencyMillis;
+    public final long requestBytes;
+    public final long responseBytes;
     public Call(final String method, final URI uri, final int code, final String body) {
+      this(method, uri, code, body, null);
+    }
+    public Call(final String method, final URI uri, final int code, final String body, final JSONObject json) {
+      this(method, uri, code, body, json, 0, 0, 0);
+    }
+    public Call(final String method, final URI uri, final int code, final String body, final JSONObject json, final long latencyMillis, final long requestBytes, final long responseBytes) {
       this.method = method;
       this.uri = uri;
       this.code = code;
       this.body = body;
+      this.json = json;
+      this.latencyMillis = latencyMillis;
+      this.requestBytes = requestBytes;
+      this.responseBytes = responseBytes;
+    }
+  }
+
+  // Turns a response entity into a call. Readers must not hold on to the stream.
+  public interface BodyReader
+  {
+    Call read(HttpUriRequest request, int code, InputStream content) throws IOException;
+  }
+
+  private static final BodyReader STRING_BODY = new BodyReader() {
+    public Call read(final HttpUriRequest request, final int code, final InputStream content) throws IOException
+    {
+      final String body = (content != null) ? HTTParty.toString(content) : "";
+      return new Call(request.getMethod(), request.getURI(), code, body);
+    }
+  };
+
+  // Looks up a transport by name. Unknown or empty names get the default.
+  public static Transport getTransport(final String name)
+  {
+    if (URLConnectionTransport.NAME.equals(name)) {
+      return URL_CONNECTION_TRANSPORT;
     }
+    return POOLED_TRANSPORT;
+  }
+
+  public static Transport getDefaultTransport()
+  {
+    return POOLED_TRANSPORT;
   }
 
   public static Call get(final String url) throws IOException
@@ -110,6 +163,18 @@ public class HTTParty
     return execute(request);
   }
 
+  // Sends one part of a file. The server rejects parts whose checksum doesn't match.
+  public static Call put(final String url, final FilePartEntity entity, final String md5) throws IOException
+  {
+    HttpPut request = new HttpPut(url);
+    request.setEntity(entity);
+    if (md5 != null && !md5.isEmpty()) {
+      request.addHeader("Content-MD5", md5);
+    }
+
+    return execute(request);
+  }
+
   public static Call delete(String url, final JSONObject args) throws IOException
   {
     if (args != null) {
@@ -128,34 +193,111 @@ public class HTTParty
     return execute(request);
   }
 
+  // The JSON variants parse the response straight from the connection without
+  // buffering it into a string first. Passing field paths like "result.documents.name"
+  // keeps only those fields, which bounds memory on very large responses.
+  public static Call getJSON(final String url, final JSONObject args, final String... fields) throws IOException
+  {
+    return getJSON(getDefaultTransport(), url, args, fields);
+  }
+
+  public static Call getJSON(final Transport transport, String url, final JSONObject args, final String... fields) throws IOException
+  {
+    if (args != null) {
+      url += toQuery(args);
+    }
+
+    HttpGet request = new HttpGet(url);
+    return execute(transport, request, jsonBody(fields));
+  }
+
+  public static Call putJSON(final String url, final JSONObject data, final String... fields) throws IOException
+  {
+    return putJSON(getDefaultTransport(), url, data, fields);
+  }
+
+  public static Call putJSON(final Transport transport, final String url, final JSONObject data, final String... fields) throws IOException
+  {
+    HttpPut request = new HttpPut(url);
+    request.setEntity(toStringEntity(data));
+
+    return execute(transport, request, jsonBody(fields));
+  }
+
+  public static Call postJSON(final String url, final JSONObject data, final String... fields) throws IOException
+  {
+    return postJSON(getDefaultTransport(), url, data, fields);
+  }
+
+  public static Call postJSON(final Transport transport, final String url, final JSONObject data, final String... fields) throws IOException
+  {
+    HttpPost request = new HttpPost(url);
+    request.setEntity(toStringEntity(data));
+
+    return execute(transport, request, jsonBody(fields));
+  }
+
   // Percent encode's a string as if it'd been passed JavaScript's encodeURIComponent.
   public static String encodeURIComponent(final String component) throws UnsupportedEncodingException
   {
-    // URLEncoder.encode encodes strings as if they'll be submitted in a form.
-    // This doesn't match up with JavaScript's encodeURIComponent behavior.
-    // So we fix up all the substitutions that need to happen.
-    String encoded = URLEncoder.encode(component, "UTF-8")
-      .replace("%7E", "~")
-      .replace("%21", "!")
-      .replace("%28", "(")
-      .replace("%29", ")")
-      .replace("%27", "'")
-    ;
-    return encoded;
+    if (!needsEncoding(component, URI_COMPONENT_SAFE)) {
+      return component;
+    }
+    StringBuilder encoded = new StringBuilder(component.length() + 16);
+    appendEncoded(encoded, component, URI_COMPONENT_SAFE);
+    return encoded.toString();
   }
 
   private static Call execute(final HttpUriRequest request) throws IOException
   {
-    HttpClient client = new DefaultHttpClient();
-    try {
-      request.addHeader("REST-API-Version", MBER_VERSION);
-      HttpResponse response = client.execute(request);
-      String body = toString(response.getEntity().getContent());
-      return new Call(request.getMethod(), request.getURI(), response.getStatusLine().getStatusCode(), body);
-    }
-    finally {
-      client.getConnectionManager().shutdown();
+    return execute(getDefaultTransport(), request, STRING_BODY);
+  }
+
+  // Calls are timed from sending the request until the response is read, and
+  // the bytes sent and received are counted for the call history.
+  private static Call execute(final Transport transport, final HttpUriRequest request, final BodyReader reader) throws IOException
+  {
+    request.addHeader("REST-API-Version", MBER_VERSION);
+    final long start = System.nanoTime();
+    final CountingInputStream[] counted = new CountingInputStream[1];
+    final Call call = transport.execute(request, new BodyReader() {
+      public Call read(final HttpUriRequest request, final int code, final InputStream content) throws IOException
+      {
+        counted[0] = (content != null) ? new CountingInputStream(content) : null;
+        return reader.read(request, code, counted[0]);
+      }
+    });
+    final long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    final long responseBytes = (counted[0] != null) ? counted[0].getByteCount() : 0;
+    return new Call(call.method, call.uri, call.code, call.body, call.json, latencyMillis, getRequestBytes(request), responseBytes);
+  }
+
+  private static long getRequestBytes(final HttpUriRequest request)
+  {
+    if (request instanceof HttpEntityEnclosingRequest) {
+      HttpEntity entity = ((HttpEntityEnclosingRequest)request).getEntity();
+      if (entity != null) {
+        return Math.max(0, entity.getContentLength());
+      }
     }
+    return 0;
+  }
+
+  private static BodyReader jsonBody(final String[] fields)
+  {
+    return new BodyReader() {
+      public Call read(final HttpUriRequest request, final int code, final InputStream content) throws IOException
+      {
+        if (content == null) {
+          return new Call(request.getMethod(), request.getURI(), code, "");
+        }
+        JSONStreamParser parser = new JSONStreamParser(new BufferedReader(new InputStreamReader(content, "UTF-8")), fields);
+        if (parser.isObject()) {
+          return new Call(request.getMethod(), request.getURI(), code, null, parser.readObject());
+        }
+        return new Call(request.getMethod(), request.getURI(), code, parser.readRemaining(MAX_NON_JSON_BODY));
+      }
+    };
   }
 
   private static String toString(final InputStream input) throws IOException
@@ -174,7 +316,7 @@ public class HTTParty
 
   public static String toQuery(final JSONObject json) throws UnsupportedEncodingException
   {
-    String query = "";
+    StringBuilder query = new StringBuilder();
     Iterator<String> keys = json.keys();
     while (keys.hasNext()) {
       String key = keys.next();
@@ -184,15 +326,81 @@ public class HTTParty
         value = MberJSON.join(json.getJSONArray(key), ",");
       }
       if (!key.isEmpty() && !value.isEmpty()) {
-        if (query.isEmpty()) {
-          query += "?";
+        query.append(query.length() == 0 ? '?' : '&');
+        appendEncoded(query, key, FORM_SAFE);
+        query.append('=');
+        appendEncoded(query, value, FORM_SAFE);
+      }
+    }
+    return query.toString();
+  }
+
+  // Characters left alone when percent encoding. Form encoding matches
+  // URLEncoder, and URI components also keep the characters JavaScript's
+  // encodeURIComponent does. Both turn spaces into plus signs, like URLEncoder.
+  private static final boolean[] FORM_SAFE = safeCharacters(".-*_");
+  private static final boolean[] URI_COMPONENT_SAFE = safeCharacters(".-*_~!'()");
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+  private static boolean[] safeCharacters(final String symbols)
+  {
+    boolean[] safe = new boolean[128];
+    for (char c = 'a'; c <= 'z'; ++c) {
+      safe[c] = true;
+    }
+    for (char c = 'A'; c <= 'Z'; ++c) {
+      safe[c] = true;
+    }
+    for (char c = '0'; c <= '9'; ++c) {
+      safe[c] = true;
+    }
+    for (char c : symbols.toCharArray()) {
+      safe[c] = true;
+    }
+    return safe;
+  }
+
+  private static boolean needsEncoding(final String value, final boolean[] safe)
+  {
+    for (int i = 0; i < value.length(); ++i) {
+      char c = value.charAt(i);
+      if (c >= 128 || !safe[c]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Percent encodes a value as UTF-8 in a single pass, appending it to the builder.
+  private static void appendEncoded(final StringBuilder out, final String value, final boolean[] safe) throws UnsupportedEncodingException
+  {
+    for (int i = 0; i < value.length(); ++i) {
+      char c = value.charAt(i);
+      if (c < 128 && safe[c]) {
+        out.append(c);
+      }
+      else if (c == ' ') {
+        out.append('+');
+      }
+      else if (c < 128) {
+        appendByte(out, c);
+      }
+      else {
+        // Multibyte characters, including surrogate pairs, go through the encoder.
+        int end = i + 1;
+        while (end < value.length() && value.charAt(end) >= 128) {
+          ++end;
         }
-        else {
-          query += "&";
+        for (byte b : value.substring(i, end).getBytes("UTF-8")) {
+          appendByte(out, b & 0xFF);
         }
-        query += URLEncoder.encode(key, "UTF-8")+"="+URLEncoder.encode(value, "UTF-8");
+        i = end - 1;
       }
     }
-    return query;
+  }
+
+  private static void appendByte(final StringBuilder out, final int b)
+  {
+    out.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
   }
 }
@@ -0,0 +1,367 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+// Parses JSON directly from a character stream into json-lib objects, so large
+// responses never have to be held in memory as a single string. Callers can
+// optionally name the fields they care about using dotted paths, for example
+// "result.documents.name". Arrays don't add a level to the path. Fields that
+// aren't named are skipped while parsing instead of being built and discarded.
+public class JSONStreamParser
+{
+  private static final int KEEP = 0;
+  private static final int DESCEND = 1;
+  private static final int SKIP = 2;
+
+  private final Reader reader;
+  private final String[] fields;
+  private final StringBuilder buffer = new StringBuilder();
+  private int peeked = -2;
+
+  public JSONStreamParser(final Reader reader, final String... fields)
+  {
+    this.reader = reader;
+    this.fields = (fields != null && fields.length > 0) ? fields : null;
+  }
+
+  // Returns true if the next value in the stream is a JSON object.
+  public boolean isObject() throws IOException
+  {
+    return peekToken() == '{';
+  }
+
+  public JSONObject readObject() throws IOException
+  {
+    if (peekToken() != '{') {
+      throw error("Expected a JSON object");
+    }
+    return readObject("", this.fields != null);
+  }
+
+  // Reads up to limit characters of whatever's left in the stream. This is
+  // used to report responses that turned out not to be JSON.
+  public String readRemaining(final int limit) throws IOException
+  {
+    final StringBuilder remaining = new StringBuilder();
+    int c = next();
+    while (c >= 0 && remaining.length() < limit) {
+      remaining.append((char)c);
+      c = next();
+    }
+    return remaining.toString();
+  }
+
+  private Object readValue(final String path, final boolean filtered) throws IOException
+  {
+    final int c = peekToken();
+    switch (c) {
+      case '{':
+        return readObject(path, filtered);
+      case '[':
+        return readArray(path, filtered);
+      case '"':
+        next();
+        return readString();
+      case 't':
+        readLiteral("true");
+        return Boolean.TRUE;
+      case 'f':
+        readLiteral("false");
+        return Boolean.FALSE;
+      case 'n':
+        readLiteral("null");
+        return JSONNull.getInstance();
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          return readNumber();
+        }
+        throw error("Unexpected character");
+    }
+  }
+
+  private JSONObject readObject(final String path, final boolean filtered) throws IOException
+  {
+    expect('{');
+    final JSONObject json = new JSONObject();
+    if (peekToken() == '}') {
+      next();
+      return json;
+    }
+    while (true) {
+      expect('"');
+      final String key = readString();
+      expect(':');
+      final String keyPath = path.isEmpty() ? key : path + "." + key;
+      final int selection = filtered ? select(keyPath) : KEEP;
+      if (selection == SKIP) {
+        skipValue();
+      }
+      else {
+        final Object value = readValue(keyPath, selection == DESCEND);
+        if (selection == KEEP || value instanceof JSONObject || value instanceof JSONArray) {
+          json.put(key, protect(value));
+        }
+      }
+      final int c = nextToken();
+      if (c == '}') {
+        return json;
+      }
+      if (c != ',') {
+        throw error("Expected ',' or '}'");
+      }
+    }
+  }
+
+  private JSONArray readArray(final String path, final boolean filtered) throws IOException
+  {
+    expect('[');
+    final JSONArray json = new JSONArray();
+    if (peekToken() == ']') {
+      next();
+      return json;
+    }
+    while (true) {
+      json.add(protect(readValue(path, filtered)));
+      final int c = nextToken();
+      if (c == ']') {
+        return json;
+      }
+      if (c != ',') {
+        throw error("Expected ',' or ']'");
+      }
+    }
+  }
+
+  // Walks past a value without building anything for it.
+  private void skipValue() throws IOException
+  {
+    final int c = peekToken();
+    if (c == '{' || c == '[') {
+      next();
+      int depth = 1;
+      while (depth > 0) {
+        final int d = next();
+        if (d < 0) {
+          throw error("Unexpected end of input");
+        }
+        if (d == '"') {
+          skipString();
+        }
+        else if (d == '{' || d == '[') {
+          ++depth;
+        }
+        else if (d == '}' || d == ']') {
+          --depth;
+        }
+      }
+    }
+    else if (c == '"') {
+      next();
+      skipString();
+    }
+    else {
+      readValue("", false);
+    }
+  }
+
+  private void skipString() throws IOException
+  {
+    while (true) {
+      final int c = next();
+      if (c < 0) {
+        throw error("Unterminated string");
+      }
+      if (c == '\\') {
+        next();
+      }
+      else if (c == '"') {
+        return;
+      }
+    }
+  }
+
+  // Reads a string whose opening quote has already been consumed.
+  private String readString() throws IOException
+  {
+    this.buffer.setLength(0);
+    while (true) {
+      final int c = next();
+      if (c < 0) {
+        throw error("Unterminated string");
+      }
+      if (c == '"') {
+        return this.buffer.toString();
+      }
+      if (c != '\\') {
+        this.buffer.append((char)c);
+        continue;
+      }
+      final int escaped = next();
+      switch (escaped) {
+        case 'b': this.buffer.append('\b'); break;
+        case 'f': this.buffer.append('\f'); break;
+        case 'n': this.buffer.append('\n'); break;
+        case 'r': this.buffer.append('\r'); break;
+        case 't': this.buffer.append('\t'); break;
+        case 'u':
+          int code = 0;
+          for (int i = 0; i < 4; ++i) {
+            final int digit = Character.digit(next(), 16);
+            if (digit < 0) {
+              throw error("Invalid unicode escape");
+            }
+            code = (code << 4) | digit;
+          }
+          this.buffer.append((char)code);
+          break;
+        default:
+          if (escaped < 0) {
+            throw error("Unterminated string");
+          }
+          this.buffer.append((char)escaped);
+      }
+    }
+  }
+
+  private Object readNumber() throws IOException
+  {
+    this.buffer.setLength(0);
+    boolean decimal = false;
+    int c = peek();
+    while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+      decimal |= (c == '.' || c == 'e' || c == 'E');
+      this.buffer.append((char)next());
+      c = peek();
+    }
+    final String number = this.buffer.toString();
+    try {
+      if (decimal) {
+        return Double.valueOf(number);
+      }
+      final BigInteger value = new BigInteger(number);
+      if (value.bitLength() < 32) {
+        return Integer.valueOf(value.intValue());
+      }
+      if (value.bitLength() < 64) {
+        return Long.valueOf(value.longValue());
+      }
+      return value;
+    }
+    catch (NumberFormatException e) {
+      throw error("Invalid number " + number);
+    }
+  }
+
+  private void readLiteral(final String literal) throws IOException
+  {
+    for (int i = 0; i < literal.length(); ++i) {
+      if (next() != literal.charAt(i)) {
+        throw error("Expected " + literal);
+      }
+    }
+  }
+
+  // Decides whether a key should be kept whole, descended into, or skipped.
+  private int select(final String path)
+  {
+    int selection = SKIP;
+    for (final String field : this.fields) {
+      if (field.equals(path) || path.startsWith(field + ".")) {
+        return KEEP;
+      }
+      if (field.startsWith(path + ".")) {
+        selection = DESCEND;
+      }
+    }
+    return selection;
+  }
+
+  // json-lib tries to parse strings that look like JSON. Quoting them the same
+  // way its own parser does keeps them as plain strings.
+  private static Object protect(final Object value)
+  {
+    if (value instanceof String) {
+      final String string = (String)value;
+      final boolean mayBeJSON = string.equals("null")
+        || (string.startsWith("[") && string.endsWith("]"))
+        || (string.startsWith("{") && string.endsWith("}"));
+      if (mayBeJSON) {
+        return "\"" + string + "\"";
+      }
+    }
+    return value;
+  }
+
+  private void expect(final int expected) throws IOException
+  {
+    if (nextToken() != expected) {
+      throw error("Expected '" + (char)expected + "'");
+    }
+  }
+
+  // Returns the next character that isn't whitespace without consuming it.
+  private int peekToken() throws IOException
+  {
+    int c = peek();
+    while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+      next();
+      c = peek();
+    }
+    return c;
+  }
+
+  private int nextToken() throws IOException
+  {
+    peekToken();
+    return next();
+  }
+
+  private int peek() throws IOException
+  {
+    if (this.peeked == -2) {
+      this.peeked = this.reader.read();
+    }
+    return this.peeked;
+  }
+
+  private int next() throws IOException
+  {
+    final int c = peek();
+    this.peeked = -2;
+    return c;
+  }
+
+  private IOException error(final String message)
+  {
+    return new IOException(message + " while parsing JSON response");
+  }
+}
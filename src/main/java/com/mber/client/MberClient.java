@@ -28,25 +28,70 @@ import hudson.FilePath;
 import hudson.model.BuildListener;
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
-import java.util.UUID;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import net.sf.json.JSON;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 import net.sf.json.JSONSerializer;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.mber.FileDownloadCallable;
 import org.jenkinsci.plugins.mber.FileUploadCallable;
 
 public class MberClient
 {
+  private static final String[] STATUS_FIELDS = { "status", "error", "message", "invalid" };
+
+  // Concurrent builds often read the same folders and projects at the same
+  // moment, so identical GETs in flight across every client share one request.
+  private static final SingleFlight<HTTParty.Call> IN_FLIGHT_GETS = new SingleFlight<HTTParty.Call>(new SingleFlight.Copier<HTTParty.Call>() {
+    public HTTParty.Call copy(final HTTParty.Call call)
+    {
+      return new HTTParty.Call(call.method, call.uri, call.code, call.body, MberJSON.copy(call.json), call.latencyMillis, call.requestBytes, call.responseBytes);
+    }
+  });
+
+  private static final long TRANSACTION_PREFIX = new SecureRandom().nextLong();
+  private static final AtomicLong TRANSACTION_COUNTER = new AtomicLong();
+
+  // Directory IDs are shared by every client talking to the same Mber application.
+  private static final DirectoryCache DIRECTORIES = new DirectoryCache();
+
+  // Project IDs by alias. Aliases map to IDs just like folder paths, so they share the cache.
+  private static final DirectoryCache PROJECTS = new DirectoryCache();
+
+  // Access tokens are shared by every client logging in with the same credentials.
+  private static final TokenStore TOKENS = new TokenStore();
+
+  // Async calls share one pool of daemon threads across every client in the JVM.
+  private static final int ASYNC_THREADS = 16;
+
+  // Multipart uploads are an extension to the upload API that not every Mber
+  // server supports, so they're off unless the mber.multipartThreshold system
+  // property sets the size, in bytes, at which files start asking for them.
+  private static final long DEFAULT_MULTIPART_THRESHOLD = Long.getLong("mber.multipartThreshold", 0);
+  private static final long PART_SIZE = 32L * 1024 * 1024;
+
   public static boolean isMberURL(final String url)
   {
     try {
@@ -73,33 +118,40 @@ public class MberClient
 
   private final String url;
   private final String application;
-  private String accessToken;
+  private volatile String accessToken;
+  private volatile String tokenKey;
+  private volatile Callable<JSONObject> authenticator;
   private String applicationId;
   private String projectId;
   private String buildId;
   private String buildAlias;
   private JSONArray buildStatus;
+  private JSONArray buildDirectories;
   private BuildListener listener;
-  private final List<HTTParty.Call> callHistory;
+  private Transport transport = HTTParty.getDefaultTransport();
+  private long multipartThreshold = DEFAULT_MULTIPART_THRESHOLD;
+  private final CallHistory callHistory = new CallHistory();
+  private final ConcurrentMap<String, String> endpoints = new ConcurrentHashMap<String, String>();
+  private final ConcurrentMap<String, DocumentIndex> documentIndexes = new ConcurrentHashMap<String, DocumentIndex>();
+  private final ConcurrentMap<String, JSONArray> uploadedParts = new ConcurrentHashMap<String, JSONArray>();
 
   public MberClient(String url, String application)
   {
     this.url = url;
     this.application = application;
-    this.callHistory = new ArrayList();
   }
 
   public MberClient(final JSONObject json)
   {
     this.url = json.getString("url");
     this.application = json.getString("application");
-    this.callHistory = new ArrayList();
     setOrClearAccessToken(json);
     setOrClearApplicationId(json);
     setOrClearProjectId(json);
     setOrClearBuildId(json);
     setOrClearBuildAlias(json);
     setOrClearBuildStatus(json);
+    setOrClearBuildDirectories(json);
   }
 
   public JSONObject toJSON()
@@ -113,6 +165,9 @@ public class MberClient
     json.put("buildId", getBuildId());
     json.put("buildAlias", getBuildAlias());
     json.put("buildStatus", getBuildStatus());
+    if (buildDirectories != null) {
+      json.put("buildDirectories", buildDirectories);
+    }
     return json;
   }
 
@@ -126,6 +181,27 @@ public class MberClient
     return listener;
   }
 
+  public void setTransport(final Transport transport)
+  {
+    this.transport = (transport != null) ? transport : HTTParty.getDefaultTransport();
+  }
+
+  public Transport getTransport()
+  {
+    return transport;
+  }
+
+  // Files at least this many bytes ask for a multipart upload. Zero turns them off.
+  public void setMultipartThreshold(final long multipartThreshold)
+  {
+    this.multipartThreshold = Math.max(0, multipartThreshold);
+  }
+
+  public long getMultipartThreshold()
+  {
+    return multipartThreshold;
+  }
+
   public String getURL()
   {
     return this.url;
@@ -136,15 +212,51 @@ public class MberClient
     return resolveAliasOrUUID(getRawApplication());
   }
 
+  // Logins are shared through the token store, so clients using the same
+  // credentials reuse one token until it's close to expiring.
   public JSONObject login(final String username, final String password)
   {
-    JSONObject response = doLogin(username, password, getApplication());
-    if (response.getString("status").equals("Success")) {
-      return response;
+    final String key = TokenStore.key(getURL(), getRawApplication(), username, password);
+    final Callable<JSONObject> login = new Callable<JSONObject>() {
+      public JSONObject call()
+      {
+        return authenticate(username, password);
+      }
+    };
+    JSONObject response;
+    try {
+      response = TOKENS.login(key, login);
+    }
+    catch (Exception e) {
+      response = MberJSON.failed(e);
+    }
+    tokenKey = key;
+    authenticator = login;
+    setOrClearAccessToken(response);
+    setOrClearApplicationId(response);
+    return response;
+  }
+
+  private JSONObject authenticate(final String username, final String password)
+  {
+    // It's possible we have an alias that's also a UUID, so the login may need
+    // retrying as an alias. Whichever form worked last time is tried first.
+    final String scope = getURL() + " " + getRawApplication();
+    final Set<String> clientIds = new LinkedHashSet<String>();
+    if (TOKENS.getClientId(scope) != null) {
+      clientIds.add(TOKENS.getClientId(scope));
     }
-    // It's possible we have an alias that's also a UUID. Retry the login as an alias.
+    clientIds.add(getApplication());
     if (isUUID(getRawApplication())) {
-      return doLogin(username, password, makeAlias(getRawApplication()));
+      clientIds.add(makeAlias(getRawApplication()));
+    }
+    JSONObject response = null;
+    for (final String clientId : clientIds) {
+      response = doLogin(username, password, clientId);
+      if (MberJSON.isSuccess(response)) {
+        TOKENS.setClientId(scope, clientId);
+        break;
+      }
     }
     return response;
   }
@@ -157,10 +269,7 @@ public class MberClient
     data.put("grant_type", "password");
     data.put("client_id", clientId);
     data.put("transactionId", generateTransactionId());
-    JSONObject jsonResponse = post("service/json/oauth/accesstoken", data);
-    setOrClearAccessToken(jsonResponse);
-    setOrClearApplicationId(jsonResponse);
-    return jsonResponse;
+    return post("service/json/oauth/accesstoken", data);
   }
 
   // Creates a link to the given file in Mber Drive. An existing link with a
@@ -175,11 +284,30 @@ public class MberClient
     data.put("tags", tags);
     data.put("access_token", getAccessToken());
     data.put("transactionId", generateTransactionId());
+
+    // Links with names we already know about are updated without a POST first.
+    final String knownId = (overwrite) ? getIndexedDocument(directory, name) : null;
+    if (knownId != null) {
+      JSONObject update = JSONObject.fromObject(data);
+      update.put("tagsToAdd", tags);
+      update.remove("tags");
+      JSONObject response = put("service/json/data/documentlink", knownId, update);
+      if (!MberJSON.isNotFound(response)) {
+        return response;
+      }
+      // The prefetched names were stale, so fall back to creating the link.
+      documentIndexes.remove(directory);
+      data.put("transactionId", generateTransactionId());
+    }
+
     JSONObject response = post("service/json/data/documentlink", data);
+    if (MberJSON.isSuccess(response)) {
+      indexDocument(directory, name, response);
+    }
 
     // Handle duplicates by reading the directory and finding the file with the matching name.
     if (response.getString("status").equals("Duplicate") && overwrite) {
-      String documentId = listFiles(directory).get(name);
+      String documentId = findDocument(directory, name);
       if (documentId != null && !documentId.isEmpty()) {
         // DocumentLink.Update has a "tagsToAdd" field instead of "tags".
         data.put("tagsToAdd", tags);
@@ -209,26 +337,36 @@ public class MberClient
       data.put("access_token", getAccessToken());
       data.put("transactionId", generateTransactionId());
       data.put("tags", tags);
+      // Replies that don't list any parts still get the whole file in one PUT.
+      if (multipartThreshold > 0 && path.length() >= multipartThreshold) {
+        data.put("partSize", PART_SIZE);
+      }
+
+      // Files with names we already know about are replaced without a POST first.
+      final String knownId = (overwrite) ? getIndexedDocument(directory, name) : null;
+      if (knownId != null) {
+        JSONObject response = put("service/json/data/upload/", knownId, data);
+        if (response.getString("status").equals("Success")) {
+          return sendFile(path, directory, name, response, (showProgress) ? getListener() : null);
+        }
+        if (!MberJSON.isNotFound(response)) {
+          return response;
+        }
+        // The prefetched names were stale, so fall back to uploading a new file.
+        documentIndexes.remove(directory);
+        data.put("transactionId", generateTransactionId());
+      }
+
       JSONObject response = post("service/json/data/upload", data);
       if (response.getString("status").equals("Success")) {
-        response = path.act(new FileUploadCallable(response.getString("url"), (showProgress) ? getListener() : null));
+        indexDocument(directory, name, response);
+        response = sendFile(path, directory, name, response, (showProgress) ? getListener() : null);
       } else if (response.getString("status").equals("Duplicate") && overwrite) {
-        response = readdir(directory);
-        if (response.getString("status").equals("Success") && response.has("result")) {
-          JSONObject result = response.getJSONObject("result");
-          if (result.has("documents")) {
-            JSONArray documents = result.getJSONArray("documents");
-            Iterator<JSONObject> itr = documents.iterator();
-            while (itr.hasNext()) {
-              JSONObject item = itr.next();
-              if (item.has("name") && item.getString("name").equals(name) && item.has("documentId")) {
-                response = put("service/json/data/upload/", item.getString("documentId"), data);
-                if (response.getString("status").equals("Success")) {
-                  response = path.act(new FileUploadCallable(response.getString("url"), getListener()));
-                }
-                break;
-              }
-            }
+        String documentId = findDocument(directory, name);
+        if (documentId != null && !documentId.isEmpty()) {
+          response = put("service/json/data/upload/", documentId, data);
+          if (response.getString("status").equals("Success")) {
+            response = sendFile(path, directory, name, response, getListener());
           }
         }
       }
@@ -242,6 +380,25 @@ public class MberClient
     }
   }
 
+  // Sends a file to the URL from an upload response. Responses with parts are
+  // uploaded in parts, and the parts that made it are remembered so a retry of
+  // the same upload only sends the rest.
+  private JSONObject sendFile(final FilePath path, final String directory, final String name, final JSONObject response, final BuildListener listener) throws IOException, InterruptedException
+  {
+    final JSONArray parts = MberJSON.getArray(response, "parts");
+    if (parts.isEmpty()) {
+      return path.act(new FileUploadCallable(response.getString("url"), listener));
+    }
+    final String key = directory + "/" + name;
+    final JSONObject result = path.act(new FileUploadCallable(response.getString("url"), listener, parts, MberJSON.getString(response, "completeUrl"), uploadedParts.get(key)));
+    if (MberJSON.isSuccess(result)) {
+      uploadedParts.remove(key);
+    } else if (MberJSON.isArray(result, "completedParts")) {
+      uploadedParts.put(key, result.getJSONArray("completedParts"));
+    }
+    return result;
+  }
+
   public JSONObject upload(final JSONObject content, final String directory, final String name, final String[] tags)
   {
     byte[] base64content = content.toString().getBytes();
@@ -303,14 +460,7 @@ public class MberClient
 
   public JSONObject mkpath(String path)
   {
-    // Paths always start from the application root, with folders names split by forward slashes.
-    path = path.replaceAll("//+", "/");
-    if (path.startsWith("/")) {
-      path = path.substring(1);
-    }
-    if (path.endsWith("/")) {
-      path = path.substring(0, path.length() - 1);
-    }
+    path = FolderPlanner.normalize(path);
 
     String parent = getApplicationId();
     JSONObject response = new JSONObject();
@@ -327,8 +477,45 @@ public class MberClient
     return response;
   }
 
+  // Creates every folder needed for a set of paths, creating shared folders
+  // only once. Returns the mkpath style response for each path.
+  public Map<String, JSONObject> mkpaths(final Iterable<String> paths)
+  {
+    FolderPlanner planner = new FolderPlanner();
+    for (String path : paths) {
+      planner.add(path);
+    }
+    return planner.create(this);
+  }
+
+  // Creates a single folder under a parent folder, or finds it if it already
+  // exists. Aliases are the folder's full path from the root, ending in a slash.
+  public JSONObject mkdir(final String folder, final String parent, final String alias)
+  {
+    // Folders we already know about don't need any calls to Mber.
+    String cached = getCachedDirectory(alias);
+    if (cached != null) {
+      JSONObject response = MberJSON.success();
+      response.put("directoryId", cached);
+      return response;
+    }
+    JSONObject response = createFolder(folder, parent, alias);
+    if (MberJSON.isSuccess(response)) {
+      cacheDirectory(alias, response.getString("directoryId"));
+    }
+    return response;
+  }
+
   public JSONObject mkproject(final String name, final String description)
   {
+    // Projects are aliased by job name, so a known alias doesn't need any calls.
+    final String cached = getCachedProject(name);
+    if (cached != null) {
+      JSONObject response = MberJSON.success();
+      response.put("projectId", cached);
+      setOrClearProjectId(response);
+      return response;
+    }
     JSONObject data = new JSONObject();
     data.put("name", name);
     // Setting the alias creates a one-to-one mapping between Mber Projects and Jenkins Jobs.
@@ -340,21 +527,38 @@ public class MberClient
     data.put("transactionId", generateTransactionId());
     JSONObject response = post("service/json/build/project", data);
     if (response.getString("status").equals("Duplicate")) {
-      String thisProjectId = lsproject().get(name);
+      // Read the project by its alias first. Only projects made before aliases
+      // were set need a scan of every project.
+      String thisProjectId = MberJSON.getString(MberJSON.getObject(readProject(name), "result"), "projectId");
+      if (thisProjectId.isEmpty()) {
+        thisProjectId = lsproject().get(name);
+      }
       if (thisProjectId != null && !thisProjectId.isEmpty()) {
         response.put("status", "Success");
         response.put("projectId", thisProjectId);
       }
     }
+    if (MberJSON.isSuccess(response)) {
+      cacheProject(name, response.getString("projectId"));
+    }
     setOrClearProjectId(response);
     return response;
   }
 
+  private JSONObject readProject(final String projectAliasOrUUID)
+  {
+    final String project = resolveAliasOrUUID(projectAliasOrUUID);
+    JSONObject data = new JSONObject();
+    data.put("access_token", getAccessToken());
+    return get("service/json/build/project/", project, data, "result.projectId");
+  }
+
+  // Every project found by a full scan is cached, so other jobs don't need to scan again.
   private Map<String, String> lsproject()
   {
     JSONObject data = new JSONObject();
     data.put("access_token", getAccessToken());
-    JSONObject response = get("service/json/build/project", "", data);
+    JSONObject response = get("service/json/build/project", "", data, "results.alias", "results.name", "results.projectId");
     Map<String, String> projects = new HashMap<String, String>();
     if (response.has("results")) {
       JSONArray results = response.getJSONArray("results");
@@ -363,6 +567,7 @@ public class MberClient
         JSONObject item = itr.next();
         if (item.has("alias")) {
           projects.put(item.getString("alias"), item.getString("projectId"));
+          cacheProject(item.getString("alias"), item.getString("projectId"));
         }
         else {
           projects.put(item.getString("name"), item.getString("projectId"));
@@ -396,11 +601,16 @@ public class MberClient
     data.put("access_token", getAccessToken());
     data.put("transactionId", generateTransactionId());
     JSONObject response = post("service/json/build/build", data);
+    final boolean created = MberJSON.isSuccess(response);
+    // A cached project may have been deleted outside of Jenkins.
+    if (MberJSON.isNotFound(response) && getProjectId() != null && !getProjectId().isEmpty()) {
+      PROJECTS.remove(getCacheScope(), getProjectId());
+    }
     // Try to look up the build by alias if we get back a duplicate response.
     // Build's are not required to be uniquely named, so doing a list and trying
     // to find a matching name isn't feasable here.
     if (MberJSON.isDuplicate(response) && alias != null && !alias.isEmpty()) {
-      response = readBuild(alias);
+      response = readBuild(alias, "result.buildId");
       final JSONObject result = MberJSON.getObject(response, "result");
       final String thisBuildId = MberJSON.getString(result, "buildId");
       if (thisBuildId != null && !thisBuildId.isEmpty()) {
@@ -408,6 +618,8 @@ public class MberClient
       }
     }
     setOrClearBuildId(response);
+    // Only a build that was just created is known to have no directories yet.
+    buildDirectories = created ? new JSONArray() : null;
     return response;
   }
 
@@ -422,21 +634,53 @@ public class MberClient
     return updateBuild(data);
   }
 
-  private JSONObject readBuild(final String buildAliasOrUUID)
+  private JSONObject readBuild(final String buildAliasOrUUID, final String... fields)
   {
     final String build = resolveAliasOrUUID(buildAliasOrUUID);
     JSONObject data = new JSONObject();
     data.put("access_token", getAccessToken());
-    return get("service/json/build/build/", build, data);
+    return get("service/json/build/build/", build, data, fields);
   }
 
   public JSONObject setBuildDirectory(final String directoryId)
   {
+    return setBuildDirectories(Collections.singletonList(directoryId));
+  }
+
+  // The directoryIds in a build update replace the build's directories, so the
+  // whole set is always sent. Directories already on the build don't need
+  // another update, and any number of new ones only take one.
+  public synchronized JSONObject setBuildDirectories(final Collection<String> directoryIds)
+  {
+    if (buildDirectories == null) {
+      buildDirectories = new JSONArray();
+      // Builds this client didn't create may already have directories.
+      if (getBuildId() != null && !getBuildId().isEmpty()) {
+        JSONObject response = readBuild(getBuildId(), "result.directoryIds");
+        if (!MberJSON.isSuccess(response)) {
+          buildDirectories = null;
+          return response;
+        }
+        buildDirectories.addAll(MberJSON.getArray(MberJSON.getObject(response, "result"), "directoryIds"));
+      }
+    }
     JSONArray directories = new JSONArray();
-    directories.add(directoryId);
+    directories.addAll(buildDirectories);
+    for (String directoryId : directoryIds) {
+      if (!directories.contains(directoryId)) {
+        directories.add(directoryId);
+      }
+    }
+    if (directories.size() == buildDirectories.size()) {
+      return MberJSON.success();
+    }
     JSONObject data = new JSONObject();
     data.put("directoryIds", directories);
-    return updateBuild(data);
+    JSONObject response = updateBuild(data);
+    if (MberJSON.isSuccess(response)) {
+      buildDirectories = directories;
+    }
+    return response;
   }
 
   public JSONObject findDocumentsWithTags(final String[] tags)
@@ -447,6 +691,17 @@ public class MberClient
     return get("service/json/data/", "document", data);
   }
 
+  // Reads one page of the documents matching the tags.
+  public JSONObject findDocumentsWithTags(final String[] tags, final int offset, final int limit)
+  {
+    JSONObject data = new JSONObject();
+    data.put("tags", tags);
+    data.put("offset", offset);
+    data.put("limit", limit);
+    data.put("access_token", getAccessToken());
+    return get("service/json/data/", "document", data);
+  }
+
   public JSONObject download(final FilePath path, final String documentAliasOrUUID, final boolean showProgress)
   {
     try {
@@ -470,12 +725,30 @@ public class MberClient
     }
     data.put("buildId", getBuildId());
     data.put("status", getBuildStatus());
+    // Updates like the final status change also carry the known directories,
+    // so they can never drop the ones linked earlier in the build.
+    if (!data.has("directoryIds")) {
+      final JSONArray directories = getKnownBuildDirectories();
+      if (directories != null && !directories.isEmpty()) {
+        data.put("directoryIds", directories);
+      }
+    }
     data.put("access_token", getAccessToken());
     data.put("transactionId", generateTransactionId());
     return put("service/json/build/build/", getBuildId(), data);
   }
 
-  private JSONObject mkdir(final String folder, final String parent, final String alias)
+  private synchronized JSONArray getKnownBuildDirectories()
+  {
+    if (buildDirectories == null) {
+      return null;
+    }
+    JSONArray directories = new JSONArray();
+    directories.addAll(buildDirectories);
+    return directories;
+  }
+
+  private JSONObject createFolder(final String folder, final String parent, final String alias)
   {
     JSONObject data = new JSONObject();
     data.put("name", folder);
@@ -485,13 +758,13 @@ public class MberClient
     data.put("transactionId", generateTransactionId());
 
     // Check for old directories whose aliases started with a tick first.
-    JSONObject result = readdir(String.format("'%s", alias));
+    JSONObject result = readdir(String.format("'%s", alias), "result.directoryId");
     if (!result.getString("status").equals("Success")) {
       // The directory doesn't exist, so try to create it.
       result = post("service/json/data/directory", data);
       if (result.getString("status").equals("Duplicate")) {
         // The directory already exists, so try to read it by alias.
-        result = readdir(alias);
+        result = readdir(alias, "result.directoryId");
         if (!result.getString("status").equals("Success")) {
           // Directory wasn't found by alias, but exists, so look it up by name.
           String folderId = lsdir(parent).get(folder);
@@ -511,14 +784,18 @@ public class MberClient
     return result;
   }
 
-  private JSONObject readdir(final String folder) {
+  private JSONObject readdir(final String folder, final String... fields) {
     JSONObject data = new JSONObject();
     data.put("access_token", getAccessToken());
     String id = folder;
     if (!isUUID(folder)) {
       id = makeAlias(folder);
     }
-    return get("service/json/data/directory/", id, data);
+    JSONObject response = get("service/json/data/directory/", id, data, fields);
+    if (MberJSON.isNotFound(response) && isUUID(folder)) {
+      invalidateDirectory(folder);
+    }
+    return response;
   }
 
   public JSONObject readDocument(final String documentAliasOrUUID) {
@@ -530,7 +807,7 @@ public class MberClient
 
   private Map<String, String> lsdir(final String folder)
   {
-    JSONObject response = readdir(folder);
+    JSONObject response = readdir(folder, "result.directories.name", "result.directories.directoryId");
     Map<String, String> directories = new HashMap<String, String>();
     if (response.has("result")) {
       JSONObject results = response.getJSONObject("result");
@@ -546,100 +823,219 @@ public class MberClient
     return directories;
   }
 
-  // Returns a map from name to UUID of all the files in a folder.
-  // Mber doesn't allow duplicate file names in a folder, so this is safe.
-  private Map<String, String> listFiles(final String folder)
+  // Finds a file's document ID by name. Each folder's index is built from one
+  // directory read the first time it's needed, and reused for every lookup
+  // after that. If a name's missing the index may be stale, so it's rebuilt once.
+  private String findDocument(final String folder, final String name)
   {
-    JSONObject response = readdir(folder);
-    Map<String, String> documents = new HashMap<String, String>();
-    if (response.has("result")) {
-      JSONObject result = response.getJSONObject("result");
-      if (result.has("documents")) {
-        JSONArray files = result.getJSONArray("documents");
-        Iterator<JSONObject> itr = files.iterator();
-        while (itr.hasNext()) {
-          JSONObject item = itr.next();
-          documents.put(item.getString("name"), item.getString("documentId"));
-        }
+    DocumentIndex index = documentIndexes.get(folder);
+    if (index != null) {
+      String documentId = index.get(name);
+      if (documentId != null) {
+        return documentId;
       }
     }
-    return documents;
+    index = indexDocuments(folder);
+    return (index != null) ? index.get(name) : null;
+  }
+
+  // Reads the names of every file in a folder up front, so overwriting files
+  // in it can update known names directly. Returns the directory read.
+  public JSONObject prefetchDocuments(final String folder)
+  {
+    JSONObject response = readdir(folder, "result.documents.name", "result.documents.documentId");
+    if (MberJSON.isSuccess(response)) {
+      JSONArray documents = MberJSON.getArray(MberJSON.getObject(response, "result"), "documents");
+      documentIndexes.put(folder, DocumentIndex.fromDocuments(documents));
+    }
+    return response;
+  }
+
+  // Only looks at names that have already been read. Never reads the folder.
+  private String getIndexedDocument(final String folder, final String name)
+  {
+    DocumentIndex index = documentIndexes.get(folder);
+    return (index != null) ? index.get(name) : null;
+  }
+
+  private DocumentIndex indexDocuments(final String folder)
+  {
+    prefetchDocuments(folder);
+    return documentIndexes.get(folder);
+  }
+
+  // Keeps indexed folders up to date as files are added to them.
+  private void indexDocument(final String folder, final String name, final JSONObject response)
+  {
+    DocumentIndex index = documentIndexes.get(folder);
+    String documentId = MberJSON.getString(response, "documentId");
+    if (index != null && !documentId.isEmpty()) {
+      index.put(name, documentId);
+    }
   }
 
-  private JSONObject get(final String service, final String resource, final JSONObject data)
+  private JSONObject get(final String service, final String resource, final JSONObject data, final String... fields)
   {
-    String mberResponse = "";
+    HTTParty.Call call = null;
     try {
-      String endpoint = getMberUrl(service) + HTTParty.encodeURIComponent(resource);
-      HTTParty.Call call = HTTParty.get(endpoint, data);
+      final String endpoint = getMberUrl(service) + HTTParty.encodeURIComponent(resource);
+      final String[] allFields = withStatusFields(fields);
+      refreshExpiringToken(data);
+      call = getShared(endpoint, data, allFields);
       recordCall(call);
-      mberResponse = call.body;
-      return parseResponse(mberResponse);
+      if (isRejectedToken(call, data) && refreshAccessToken(data)) {
+        call = getShared(endpoint, data, allFields);
+        recordCall(call);
+      }
+      return parseResponse(call);
     }
     catch (MalformedURLException e) {
-      JSONObject error = new JSONObject();
-      error.put("status", "Failed");
-      error.put("error", "Invalid Mber URL: "+this.url);
-      return error;
+      return invalidUrl();
     }
     catch (Exception e) {
-      JSONObject error = new JSONObject();
-      error.put("status", "Failed");
-      error.put("error", mberResponse);
-      return error;
+      return failedCall(call, e);
     }
   }
 
+  // Identical reads that are in flight at the same time share one request.
+  private HTTParty.Call getShared(final String endpoint, final JSONObject data, final String[] fields) throws Exception
+  {
+    return IN_FLIGHT_GETS.execute(flightKey(endpoint, data, fields), new Callable<HTTParty.Call>() {
+      public HTTParty.Call call() throws Exception
+      {
+        return HTTParty.getJSON(getTransport(), endpoint, data, fields);
+      }
+    });
+  }
+
   private JSONObject put(final String service, final String resource, final JSONObject data)
   {
-    String mberResponse = "";
+    HTTParty.Call call = null;
     try {
       String endpoint = getMberUrl(service) + HTTParty.encodeURIComponent(resource);
-      HTTParty.Call call = HTTParty.put(endpoint, data);
+      useScopedTransactionId(endpoint, data);
+      refreshExpiringToken(data);
+      call = HTTParty.putJSON(getTransport(), endpoint, data);
       recordCall(call);
-      mberResponse = call.body;
-      return parseResponse(mberResponse);
+      if (isRejectedToken(call, data) && refreshAccessToken(data)) {
+        call = HTTParty.putJSON(getTransport(), endpoint, data);
+        recordCall(call);
+      }
+      return parseResponse(call);
     }
     catch (MalformedURLException e) {
-      JSONObject error = new JSONObject();
-      error.put("status", "Failed");
-      error.put("error", "Invalid Mber URL: "+this.url);
-      return error;
+      return invalidUrl();
     }
     catch (Exception e) {
-      JSONObject error = new JSONObject();
-      error.put("status", "Failed");
-      error.put("error", mberResponse);
-      return error;
+      return failedCall(call, e);
     }
   }
 
   private JSONObject post(final String endpoint, final JSONObject data)
   {
-    String mberResponse = "";
+    HTTParty.Call call = null;
     try {
-      HTTParty.Call call = HTTParty.post(getMberUrl(endpoint), data);
+      useScopedTransactionId(endpoint, data);
+      refreshExpiringToken(data);
+      call = HTTParty.postJSON(getTransport(), getMberUrl(endpoint), data);
       recordCall(call);
-      mberResponse = call.body;
-      return parseResponse(mberResponse);
+      if (isRejectedToken(call, data) && refreshAccessToken(data)) {
+        call = HTTParty.postJSON(getTransport(), getMberUrl(endpoint), data);
+        recordCall(call);
+      }
+      JSONObject response = parseResponse(call);
+      // Calls into a folder that's gone mean our cached ID for it is stale.
+      if (MberJSON.isNotFound(response)) {
+        if (data.has("directoryId")) {
+          invalidateDirectory(data.getString("directoryId"));
+        }
+        if (data.has("parent")) {
+          invalidateDirectory(data.getString("parent"));
+        }
+      }
+      return response;
     }
     catch (MalformedURLException e) {
-      JSONObject error = new JSONObject();
-      error.put("status", "Failed");
-      error.put("error", "Invalid Mber URL: "+this.url);
-      return error;
+      return invalidUrl();
     }
     catch (Exception e) {
-      JSONObject error = new JSONObject();
-      error.put("status", "Failed");
-      error.put("error", mberResponse);
-      return error;
+      return failedCall(call, e);
+    }
+  }
+
+  // Retried operations resend the transaction IDs from their first attempt.
+  private static void useScopedTransactionId(final String endpoint, final JSONObject data)
+  {
+    if (data.has("transactionId")) {
+      final String transactionId = TransactionScope.transactionIdFor(endpoint, data);
+      if (transactionId != null) {
+        data.put("transactionId", transactionId);
+      }
+    }
+  }
+
+  // Identical GETs are the same request no matter which build's token they
+  // carry, so the token is left out of the key. The application is kept in,
+  // since aliases are only unique within an application.
+  private String flightKey(final String endpoint, final JSONObject data, final String[] fields) throws UnsupportedEncodingException
+  {
+    StringBuilder key = new StringBuilder();
+    key.append(getApplicationId()).append(' ').append(endpoint);
+    if (data != null) {
+      JSONObject args = JSONObject.fromObject(data);
+      args.remove("access_token");
+      key.append(HTTParty.toQuery(args));
+    }
+    if (fields != null) {
+      key.append('#').append(StringUtils.join(fields, ","));
+    }
+    return key.toString();
+  }
+
+  private JSONObject invalidUrl()
+  {
+    JSONObject error = new JSONObject();
+    error.put("status", "Failed");
+    error.put("error", "Invalid Mber URL: "+this.url);
+    return error;
+  }
+
+  private JSONObject failedCall(final HTTParty.Call call, final Exception e)
+  {
+    // Report the raw response if we got one, otherwise whatever went wrong getting it.
+    String message = (call != null && call.body != null) ? call.body : e.getLocalizedMessage();
+    JSONObject error = new JSONObject();
+    error.put("status", "Failed");
+    error.put("error", (message != null) ? message : "");
+    return error;
+  }
+
+  // Filtered reads always need the fields used to decide if the call succeeded.
+  private static String[] withStatusFields(final String[] fields)
+  {
+    if (fields == null || fields.length == 0) {
+      return fields;
+    }
+    String[] all = Arrays.copyOf(fields, fields.length + STATUS_FIELDS.length);
+    System.arraycopy(STATUS_FIELDS, 0, all, fields.length, STATUS_FIELDS.length);
+    return all;
+  }
+
+  private JSONObject parseResponse(final HTTParty.Call call)
+  {
+    if (call.json != null) {
+      return parseResponse(call.json, call.json.toString());
     }
+    return parseResponse(call.body);
   }
 
   private JSONObject parseResponse(final String response)
   {
-    JSONObject json = (JSONObject)JSONSerializer.toJSON(response);
+    return parseResponse((JSONObject)JSONSerializer.toJSON(response), response);
+  }
+
+  private JSONObject parseResponse(final JSONObject json, final String response)
+  {
     if (!json.has("status")) {
       json.put("status", "Failed");
     }
@@ -663,24 +1059,159 @@ public class MberClient
     return json;
   }
 
+  // Async variants of the calls that are commonly independent of each other.
+  // They return immediately, so callers can have several requests in flight
+  // at once, e.g. creating folders or reading a batch of documents. They share
+  // one pool across the JVM, so they're only for short metadata calls. Callers
+  // moving file data should use an executor of their own.
+  public Future<JSONObject> mkpathAsync(final String path)
+  {
+    return submit(new Callable<JSONObject>() {
+      public JSONObject call()
+      {
+        return mkpath(path);
+      }
+    });
+  }
+
+  public Future<JSONObject> readDocumentAsync(final String documentAliasOrUUID)
+  {
+    return submit(new Callable<JSONObject>() {
+      public JSONObject call()
+      {
+        return readDocument(documentAliasOrUUID);
+      }
+    });
+  }
+
+  public Future<JSONObject> updateBuildAsync(final String name, final String description, final BuildStatus... statuses)
+  {
+    return submit(new Callable<JSONObject>() {
+      public JSONObject call()
+      {
+        return updateBuild(name, description, statuses);
+      }
+    });
+  }
+
+  // Waits for an async call to finish. Interrupts and unexpected exceptions
+  // are turned into failed responses, the same way the blocking calls report them.
+  public static JSONObject await(final Future<JSONObject> future)
+  {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      return MberJSON.aborted("Build was canceled.");
+    }
+    catch (ExecutionException e) {
+      return MberJSON.failed(e);
+    }
+  }
+
+  private static Future<JSONObject> submit(final Callable<JSONObject> call)
+  {
+    // Async calls made while retrying an operation belong to the same operation.
+    return AsyncPool.EXECUTOR.submit(TransactionScope.wrap(call));
+  }
+
+  // Lazily creates the shared async pool the first time it's used.
+  private static class AsyncPool
+  {
+    static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(ASYNC_THREADS, new NamedThreadFactory("Mber client worker"));
+  }
+
+  // Transaction IDs only need to be unique, not unpredictable. A random prefix
+  // picked once per JVM plus a counter gives 16 unique bytes without going
+  // through the shared SecureRandom on every call.
   public static String generateTransactionId()
   {
-    UUID uuid = UUID.randomUUID();
-    long msb = uuid.getMostSignificantBits();
-    long lsb = uuid.getLeastSignificantBits();
-    byte[] buffer = new byte[16];
-    for (int i = 0; i < 8; ++i) {
-      buffer[i] = (byte)(msb >> 8 * (7 - i));
+    return encodeBase64(TRANSACTION_PREFIX, TRANSACTION_COUNTER.incrementAndGet());
+  }
+
+  private static final char[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+  // Base64 encodes two longs as 16 big endian bytes, padded to 24 characters.
+  private static String encodeBase64(final long high, final long low)
+  {
+    char[] encoded = new char[24];
+    int bits = 0;
+    int count = 0;
+    int out = 0;
+    for (int i = 0; i < 16; ++i) {
+      long word = (i < 8) ? high : low;
+      bits = (bits << 8) | (int)((word >>> (8 * (7 - (i % 8)))) & 0xFF);
+      count += 8;
+      while (count >= 6) {
+        count -= 6;
+        encoded[out++] = BASE64_ALPHABET[(bits >>> count) & 0x3F];
+      }
     }
-    for (int i = 8; i < 16; ++i) {
-      buffer[i] = (byte)(lsb >> 8 * (7 - i));
+    encoded[out++] = BASE64_ALPHABET[(bits << (6 - count)) & 0x3F];
+    encoded[out++] = '=';
+    encoded[out] = '=';
+    return new String(encoded);
+  }
+
+  // Endpoints are resolved against the base URL once per client and reused.
+  private String getMberUrl(final String endpoint) throws MalformedURLException
+  {
+    String resolved = endpoints.get(endpoint);
+    if (resolved == null) {
+      resolved = baseUrlWithPath(this.url, endpoint);
+      endpoints.put(endpoint, resolved);
     }
-    return new String(Base64.encodeBase64(buffer));
+    return resolved;
   }
 
-  private String getMberUrl(String endpoint) throws MalformedURLException
+  // Forgets everything cached across clients. Mostly useful for tests.
+  public static void clearCaches()
   {
-    return baseUrlWithPath(this.url, endpoint);
+    DIRECTORIES.clear();
+    PROJECTS.clear();
+    TOKENS.clear();
+  }
+
+  private String getCacheScope()
+  {
+    return this.url + " " + getApplicationId();
+  }
+
+  private String getCachedDirectory(final String alias)
+  {
+    if (getApplicationId() == null || getApplicationId().isEmpty()) {
+      return null;
+    }
+    return DIRECTORIES.get(getCacheScope(), alias);
+  }
+
+  private void cacheDirectory(final String alias, final String directoryId)
+  {
+    if (getApplicationId() != null && !getApplicationId().isEmpty()) {
+      DIRECTORIES.put(getCacheScope(), alias, directoryId);
+    }
+  }
+
+  private void invalidateDirectory(final String directoryId)
+  {
+    DIRECTORIES.invalidate(getCacheScope(), directoryId);
+  }
+
+  private String getCachedProject(final String alias)
+  {
+    if (getApplicationId() == null || getApplicationId().isEmpty()) {
+      return null;
+    }
+    return PROJECTS.get(getCacheScope(), alias);
+  }
+
+  private void cacheProject(final String alias, final String projectId)
+  {
+    if (getApplicationId() != null && !getApplicationId().isEmpty() && projectId != null && !projectId.isEmpty()) {
+      PROJECTS.put(getCacheScope(), alias, projectId);
+    }
   }
 
   public String resolveAliasOrUUID(final String value)
@@ -719,14 +1250,57 @@ public class MberClient
     return applicationId;
   }
 
-  public List<HTTParty.Call> getCallHistory()
+  public CallHistory getCallHistory()
   {
     return callHistory;
   }
 
   private void recordCall(final HTTParty.Call call)
   {
-    callHistory.add(call);
+    callHistory.add(CallRecord.fromCall(call));
+    // Stop sharing a token once Mber starts rejecting it.
+    if (call.code == 401 && tokenKey != null) {
+      TOKENS.invalidate(tokenKey, getAccessToken());
+    }
+  }
+
+  private boolean isRejectedToken(final HTTParty.Call call, final JSONObject data)
+  {
+    return call.code == 401 && data.has("access_token");
+  }
+
+  // Logs in again once the shared token is close to expiring, so a long build
+  // step doesn't start calls with a token that runs out partway through.
+  private void refreshExpiringToken(final JSONObject data)
+  {
+    final String token = getAccessToken();
+    if (data.has("access_token") && token != null && !token.isEmpty() && tokenKey != null && !TOKENS.isFresh(tokenKey, token)) {
+      refreshAccessToken(data);
+    }
+  }
+
+  // Gets a new token through the token store, which shares the login with
+  // other clients using the same credentials. Returns true if the request
+  // data now has a different token to retry with.
+  private boolean refreshAccessToken(final JSONObject data)
+  {
+    if (tokenKey == null || authenticator == null) {
+      return false;
+    }
+    final String oldToken = getAccessToken();
+    JSONObject response;
+    try {
+      response = TOKENS.login(tokenKey, authenticator);
+    }
+    catch (Exception e) {
+      return false;
+    }
+    if (!MberJSON.isSuccess(response)) {
+      return false;
+    }
+    setOrClearAccessToken(response);
+    data.put("access_token", getAccessToken());
+    return !getAccessToken().equals(oldToken);
   }
 
   private void setOrClearApplicationId(final JSONObject json)
@@ -824,6 +1398,16 @@ public class MberClient
     }
   }
 
+  private void setOrClearBuildDirectories(final JSONObject json)
+  {
+    if (json.has("buildDirectories")) {
+      buildDirectories = json.getJSONArray("buildDirectories");
+    }
+    else {
+      buildDirectories = null;
+    }
+  }
+
   private void recordBuildStatus(final BuildStatus... statuses)
   {
     JSONArray statusList = new JSONArray();
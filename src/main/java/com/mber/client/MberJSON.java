@@ -24,7 +24,9 @@ THE SOFTWARE.
 */
 
 package com.mber.client;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.Iterator;
 import net.sf.json.JSONArray;
@@ -101,6 +103,20 @@ public class MberJSON
     return buffer.toString();
   }
 
+  // Deep copies a JSON object, so callers sharing a response can't see each other's changes.
+  public static JSONObject copy(final JSONObject json)
+  {
+    if (json == null) {
+      return null;
+    }
+    try {
+      return new JSONStreamParser(new StringReader(json.toString())).readObject();
+    }
+    catch (IOException e) {
+      return JSONObject.fromObject(json);
+    }
+  }
+
   public static boolean isSuccess(final JSONObject result)
   {
     return result != null && getString(result, "status").equalsIgnoreCase("Success");
@@ -116,6 +132,11 @@ public class MberJSON
     return result != null && getString(result, "status").equalsIgnoreCase("Duplicate");
   }
 
+  public static boolean isNotFound(final JSONObject result)
+  {
+    return result != null && getString(result, "status").equalsIgnoreCase("NotFound");
+  }
+
   public static boolean isAborted(final JSONObject result)
   {
     return result != null && getString(result, "status").equalsIgnoreCase("Aborted");
@@ -0,0 +1,150 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+// Sends requests through a single Apache HTTP client whose connections are
+// pooled and shared by every client in the JVM. Calls to the same host reuse
+// an open keep-alive connection instead of paying for a new TCP and TLS
+// handshake on every request.
+public class PooledTransport implements Transport
+{
+  public static final String NAME = "pooled";
+
+  private final static int MAX_CONNECTIONS = 100;
+  private final static int MAX_CONNECTIONS_PER_ROUTE = 20;
+  private final static long KEEP_ALIVE_MILLIS = 30 * 1000;
+  private final static long IDLE_TIMEOUT_MILLIS = 60 * 1000;
+  private final static long EVICTION_INTERVAL_MILLIS = 15 * 1000;
+
+  // Every build shares the pool, so a full pool must fail the call that's
+  // waiting on it instead of blocking every build.
+  private final static long LEASE_TIMEOUT_MILLIS = 60 * 1000;
+
+  public String getName()
+  {
+    return NAME;
+  }
+
+  public HTTParty.Call execute(final HttpUriRequest request, final HTTParty.BodyReader reader) throws IOException
+  {
+    try {
+      HttpResponse response = getClient().execute(request);
+      HttpEntity entity = response.getEntity();
+      try {
+        InputStream content = (entity != null) ? entity.getContent() : null;
+        return reader.read(request, response.getStatusLine().getStatusCode(), content);
+      }
+      finally {
+        // Fully read the response so the connection goes back to the pool for reuse.
+        EntityUtils.consume(entity);
+      }
+    }
+    catch (IOException e) {
+      // Aborting releases the connection without putting a broken one back in the pool.
+      request.abort();
+      throw e;
+    }
+    catch (RuntimeException e) {
+      request.abort();
+      throw e;
+    }
+  }
+
+  public static DefaultHttpClient getClient()
+  {
+    return SharedClient.INSTANCE;
+  }
+
+  // Lazily creates the shared client the first time a request is made.
+  private static class SharedClient
+  {
+    static final DefaultHttpClient INSTANCE = makeClient();
+
+    private static DefaultHttpClient makeClient()
+    {
+      final PoolingClientConnectionManager connections = new PoolingClientConnectionManager();
+      connections.setMaxTotal(MAX_CONNECTIONS);
+      connections.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+
+      final DefaultHttpClient client = new DefaultHttpClient(connections);
+      final HttpParams params = client.getParams();
+      params.setIntParameter(CoreConnectionPNames.CONNECTION_TIMEOUT, CONNECT_TIMEOUT_MILLIS);
+      params.setIntParameter(CoreConnectionPNames.SO_TIMEOUT, READ_TIMEOUT_MILLIS);
+      params.setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, LEASE_TIMEOUT_MILLIS);
+      client.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+        @Override
+        public long getKeepAliveDuration(final HttpResponse response, final HttpContext context)
+        {
+          // Servers that don't send a Keep-Alive header get a bounded keep alive
+          // instead of being kept open indefinitely.
+          final long duration = super.getKeepAliveDuration(response, context);
+          return (duration > 0) ? duration : KEEP_ALIVE_MILLIS;
+        }
+      });
+
+      startEvictor(connections);
+      return client;
+    }
+
+    // Periodically closes expired and idle connections so the pool doesn't hold
+    // on to sockets the server has already given up on.
+    private static void startEvictor(final PoolingClientConnectionManager connections)
+    {
+      final Thread evictor = new Thread("Mber HTTP connection evictor") {
+        @Override
+        public void run()
+        {
+          try {
+            while (true) {
+              Thread.sleep(EVICTION_INTERVAL_MILLIS);
+              connections.closeExpiredConnections();
+              connections.closeIdleConnections(IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+          }
+          catch (InterruptedException e) {
+            // Shutting down.
+          }
+        }
+      };
+      evictor.setDaemon(true);
+      evictor.start();
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Limits how fast and how many requests at once are sent to Mber. The rate is
+// a token bucket that allows a burst of up to one second's worth of requests,
+// and the in-flight cap is a semaphore. Zero turns either limit off. Time spent
+// waiting for either one is tracked, so throttling shows up as queue time.
+public class RequestLimiter
+{
+  // Limiters are shared by every client using the same access profile.
+  private static final ConcurrentMap<String, RequestLimiter> LIMITERS = new ConcurrentHashMap<String, RequestLimiter>();
+
+  public static RequestLimiter forKey(final String key, final int requestsPerSecond, final int maxConcurrentRequests)
+  {
+    while (true) {
+      RequestLimiter existing = LIMITERS.get(key);
+      if (existing != null && existing.hasLimits(requestsPerSecond, maxConcurrentRequests)) {
+        return existing;
+      }
+      // The profile's limits changed, so start over with the new ones.
+      RequestLimiter limiter = new RequestLimiter(requestsPerSecond, maxConcurrentRequests);
+      if (existing == null) {
+        if (LIMITERS.putIfAbsent(key, limiter) == null) {
+          return limiter;
+        }
+      }
+      else if (LIMITERS.replace(key, existing, limiter)) {
+        return limiter;
+      }
+    }
+  }
+
+  private final int requestsPerSecond;
+  private final int maxConcurrentRequests;
+  private final Semaphore inFlight;
+  private double tokens;
+  private long refilledAt;
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong queuedRequests = new AtomicLong();
+  private final AtomicLong queueNanos = new AtomicLong();
+  private final AtomicLong maxQueueNanos = new AtomicLong();
+
+  public RequestLimiter(final int requestsPerSecond, final int maxConcurrentRequests)
+  {
+    this.requestsPerSecond = Math.max(0, requestsPerSecond);
+    this.maxConcurrentRequests = Math.max(0, maxConcurrentRequests);
+    this.inFlight = (this.maxConcurrentRequests > 0) ? new Semaphore(this.maxConcurrentRequests, true) : null;
+    this.tokens = this.requestsPerSecond;
+    this.refilledAt = System.nanoTime();
+  }
+
+  public boolean hasLimits(final int requestsPerSecond, final int maxConcurrentRequests)
+  {
+    return this.requestsPerSecond == Math.max(0, requestsPerSecond) && this.maxConcurrentRequests == Math.max(0, maxConcurrentRequests);
+  }
+
+  // Blocks until the request is allowed to go out. Every acquire must be
+  // followed by a release once the request finishes.
+  public void acquire() throws InterruptedException
+  {
+    final long start = System.nanoTime();
+    // Wait for a token before taking a slot, so a request sleeping off the
+    // rate limit doesn't hold a slot that another request could be using.
+    long wait = reserve();
+    if (wait > 0) {
+      TimeUnit.NANOSECONDS.sleep(wait);
+    }
+    if (inFlight != null) {
+      inFlight.acquire();
+    }
+    recordQueueTime(System.nanoTime() - start);
+  }
+
+  public void release()
+  {
+    if (inFlight != null) {
+      inFlight.release();
+    }
+  }
+
+  public int getRequestsPerSecond()
+  {
+    return requestsPerSecond;
+  }
+
+  public int getMaxConcurrentRequests()
+  {
+    return maxConcurrentRequests;
+  }
+
+  public long getRequests()
+  {
+    return requests.get();
+  }
+
+  // Requests that had to wait at all before being sent.
+  public long getQueuedRequests()
+  {
+    return queuedRequests.get();
+  }
+
+  public long getQueueTimeMillis()
+  {
+    return TimeUnit.NANOSECONDS.toMillis(queueNanos.get());
+  }
+
+  public long getMaxQueueTimeMillis()
+  {
+    return TimeUnit.NANOSECONDS.toMillis(maxQueueNanos.get());
+  }
+
+  // Takes a token, going into debt if there aren't any. Callers sleep off the
+  // debt outside the lock, which keeps requests in the order they arrived.
+  private synchronized long reserve()
+  {
+    if (requestsPerSecond <= 0) {
+      return 0;
+    }
+    final long now = System.nanoTime();
+    tokens = Math.min(requestsPerSecond, tokens + (now - refilledAt) * requestsPerSecond / 1e9);
+    refilledAt = now;
+    tokens -= 1;
+    if (tokens >= 0) {
+      return 0;
+    }
+    return (long)(-tokens * 1e9 / requestsPerSecond);
+  }
+
+  private void recordQueueTime(final long nanos)
+  {
+    requests.incrementAndGet();
+    // Ignore the overhead of taking an uncontended token.
+    if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+      return;
+    }
+    queuedRequests.incrementAndGet();
+    queueNanos.addAndGet(nanos);
+    long max = maxQueueNanos.get();
+    while (nanos > max && !maxQueueNanos.compareAndSet(max, nanos)) {
+      max = maxQueueNanos.get();
+    }
+  }
+}
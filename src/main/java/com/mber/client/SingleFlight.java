@@ -0,0 +1,93 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// Coalesces identical calls that are in flight at the same time. The first
+// caller for a key runs the call, and everyone else asking for the same key
+// while it's running waits for that result instead of making their own call.
+// Nothing is cached; once a call finishes the next caller starts a new one.
+public class SingleFlight<V>
+{
+  // Every caller gets its own copy of the shared result, so they're free to modify it.
+  public interface Copier<V>
+  {
+    V copy(V value);
+  }
+
+  private final ConcurrentMap<String, FutureTask<V>> flights = new ConcurrentHashMap<String, FutureTask<V>>();
+  private final Copier<V> copier;
+
+  public SingleFlight(final Copier<V> copier)
+  {
+    this.copier = copier;
+  }
+
+  public V execute(final String key, final Callable<V> call) throws Exception
+  {
+    FutureTask<V> task = new FutureTask<V>(call);
+    FutureTask<V> flight = flights.putIfAbsent(key, task);
+    if (flight == null) {
+      try {
+        task.run();
+      }
+      finally {
+        flights.remove(key, task);
+      }
+      flight = task;
+    }
+    // The call's own result is never handed out, so nobody can change it while
+    // someone else is still copying it.
+    return copier.copy(get(flight));
+  }
+
+  // Number of distinct calls currently in flight.
+  public int size()
+  {
+    return flights.size();
+  }
+
+  private static <V> V get(final FutureTask<V> task) throws Exception
+  {
+    try {
+      return task.get();
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception)cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw e;
+    }
+  }
+}
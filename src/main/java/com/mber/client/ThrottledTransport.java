@@ -0,0 +1,64 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import org.apache.http.client.methods.HttpUriRequest;
+
+// Sends requests through another transport once a limiter lets them go.
+public class ThrottledTransport implements Transport
+{
+  private final Transport transport;
+  private final RequestLimiter limiter;
+
+  public ThrottledTransport(final Transport transport, final RequestLimiter limiter)
+  {
+    this.transport = transport;
+    this.limiter = limiter;
+  }
+
+  public String getName()
+  {
+    return transport.getName();
+  }
+
+  public HTTParty.Call execute(final HttpUriRequest request, final HTTParty.BodyReader reader) throws IOException
+  {
+    try {
+      limiter.acquire();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting to send a request to Mber");
+    }
+    try {
+      return transport.execute(request, reader);
+    }
+    finally {
+      limiter.release();
+    }
+  }
+}
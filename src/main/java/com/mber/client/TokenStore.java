@@ -0,0 +1,180 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.sf.json.JSONObject;
+import org.apache.commons.codec.digest.DigestUtils;
+
+// Caches access tokens by the credentials that were used to get them, so every
+// build step on the master that logs in with the same access profile shares one
+// token instead of logging in again. Logins for the same profile that happen at
+// the same time share one request, and tokens are refreshed a little before
+// they expire rather than after calls start failing.
+public class TokenStore
+{
+  // Mber doesn't always say how long a token lasts, so assume a conservative lifetime.
+  public final static long DEFAULT_LIFETIME_MILLIS = 15 * 60 * 1000;
+  public final static long REFRESH_MARGIN_MILLIS = 60 * 1000;
+
+  private static class Token
+  {
+    final JSONObject response;
+    final long expiresAt;
+
+    Token(final JSONObject response, final long expiresAt)
+    {
+      this.response = response;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final ConcurrentMap<String, Token> tokens = new ConcurrentHashMap<String, Token>();
+  private final ConcurrentMap<String, String> clientIds = new ConcurrentHashMap<String, String>();
+  private final SingleFlight<JSONObject> logins = new SingleFlight<JSONObject>(new SingleFlight.Copier<JSONObject>() {
+    public JSONObject copy(final JSONObject response)
+    {
+      return MberJSON.copy(response);
+    }
+  });
+  private final long defaultLifetimeMillis;
+  private final long refreshMarginMillis;
+
+  public TokenStore()
+  {
+    this(DEFAULT_LIFETIME_MILLIS, REFRESH_MARGIN_MILLIS);
+  }
+
+  public TokenStore(final long defaultLifetimeMillis, final long refreshMarginMillis)
+  {
+    this.defaultLifetimeMillis = defaultLifetimeMillis;
+    this.refreshMarginMillis = refreshMarginMillis;
+  }
+
+  // Passwords are only kept as a hash, so they never sit in memory as cache keys.
+  public static String key(final String url, final String application, final String username, final String password)
+  {
+    return url + "\n" + application + "\n" + username + "\n" + DigestUtils.sha256Hex(password != null ? password : "");
+  }
+
+  // Returns a copy of the cached login response for the key, or runs the login
+  // if there isn't one that's still fresh. Only successful logins are cached.
+  public JSONObject login(final String key, final Callable<JSONObject> login) throws Exception
+  {
+    JSONObject response = get(key);
+    if (response != null) {
+      return response;
+    }
+    return logins.execute(key, new Callable<JSONObject>() {
+      public JSONObject call() throws Exception
+      {
+        // Someone else may have just finished logging in with the same profile.
+        JSONObject cached = get(key);
+        if (cached != null) {
+          return cached;
+        }
+        JSONObject response = login.call();
+        if (MberJSON.isSuccess(response)) {
+          tokens.put(key, new Token(MberJSON.copy(response), expiresAt(response)));
+        }
+        else {
+          tokens.remove(key);
+        }
+        return response;
+      }
+    });
+  }
+
+  // Returns a copy of the cached login response, or null if it's missing or due for a refresh.
+  public JSONObject get(final String key)
+  {
+    Token token = tokens.get(key);
+    if (token == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() >= token.expiresAt - refreshMarginMillis) {
+      return null;
+    }
+    return MberJSON.copy(token.response);
+  }
+
+  // Returns true if the token is the one cached for the key and isn't due for a refresh.
+  public boolean isFresh(final String key, final String accessToken)
+  {
+    Token token = tokens.get(key);
+    if (token == null || System.currentTimeMillis() >= token.expiresAt - refreshMarginMillis) {
+      return false;
+    }
+    return MberJSON.getString(token.response, "access_token").equals(accessToken);
+  }
+
+  // Drops a token Mber rejected. A newer token for the same key is left alone.
+  public void invalidate(final String key, final String accessToken)
+  {
+    Token token = tokens.get(key);
+    if (token != null && MberJSON.getString(token.response, "access_token").equals(accessToken)) {
+      tokens.remove(key, token);
+    }
+  }
+
+  // Applications named by a UUID-looking alias need the alias form of the
+  // client ID. Remembering which form worked saves a failed login every time.
+  public String getClientId(final String application)
+  {
+    return clientIds.get(application);
+  }
+
+  public void setClientId(final String application, final String clientId)
+  {
+    clientIds.put(application, clientId);
+  }
+
+  public int size()
+  {
+    return tokens.size();
+  }
+
+  public void clear()
+  {
+    tokens.clear();
+    clientIds.clear();
+  }
+
+  private long expiresAt(final JSONObject response)
+  {
+    long lifetimeMillis = defaultLifetimeMillis;
+    if (response.has("expires_in")) {
+      try {
+        lifetimeMillis = Long.parseLong(response.getString("expires_in")) * 1000;
+      }
+      catch (NumberFormatException e) {
+        // Fall back to the default lifetime.
+      }
+    }
+    return System.currentTimeMillis() + lifetimeMillis;
+  }
+}
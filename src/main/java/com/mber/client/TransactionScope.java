@@ -0,0 +1,131 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import net.sf.json.JSONObject;
+
+// Groups the Mber calls a thread makes into one logical operation, so retrying
+// the operation sends the same transaction IDs as the first attempt. Mber can
+// then recognize a call that already went through and return its original
+// result instead of treating the retry as a new request. Calls are matched by
+// their endpoint and body, so an attempt that takes a different path through
+// the API never picks up a transaction ID meant for some other call. Work the
+// operation hands to thread pools is wrapped so it runs in the same scope.
+public final class TransactionScope
+{
+  private static final ThreadLocal<TransactionScope> CURRENT = new ThreadLocal<TransactionScope>();
+
+  private final Map<String, String> transactionIds = new HashMap<String, String>();
+  private int depth = 0;
+
+  private TransactionScope()
+  {
+  }
+
+  // Scopes nest. Inner scopes share the outermost scope's transaction IDs.
+  public static void begin()
+  {
+    TransactionScope scope = CURRENT.get();
+    if (scope == null) {
+      scope = new TransactionScope();
+      CURRENT.set(scope);
+    }
+    synchronized (scope) {
+      scope.depth += 1;
+    }
+  }
+
+  public static void end()
+  {
+    TransactionScope scope = CURRENT.get();
+    if (scope == null) {
+      return;
+    }
+    synchronized (scope) {
+      if (--scope.depth > 0) {
+        return;
+      }
+    }
+    CURRENT.remove();
+  }
+
+  // Captures the calling thread's scope so the call runs in it on whatever
+  // thread picks it up. Calls made outside of a scope are returned as is.
+  public static <T> Callable<T> wrap(final Callable<T> call)
+  {
+    final TransactionScope scope = CURRENT.get();
+    if (scope == null) {
+      return call;
+    }
+    return new Callable<T>() {
+      public T call() throws Exception
+      {
+        final TransactionScope previous = CURRENT.get();
+        CURRENT.set(scope);
+        try {
+          return call.call();
+        }
+        finally {
+          if (previous != null) {
+            CURRENT.set(previous);
+          }
+          else {
+            CURRENT.remove();
+          }
+        }
+      }
+    };
+  }
+
+  public static boolean isActive()
+  {
+    return CURRENT.get() != null;
+  }
+
+  // Returns the transaction ID for a call, or null if there's no scope on this thread.
+  static String transactionIdFor(final String endpoint, final JSONObject data)
+  {
+    TransactionScope scope = CURRENT.get();
+    if (scope == null) {
+      return null;
+    }
+    JSONObject request = JSONObject.fromObject(data);
+    // Tokens can be refreshed between attempts without making it a different call.
+    request.remove("access_token");
+    request.remove("transactionId");
+    final String key = endpoint + "\n" + request.toString();
+    synchronized (scope) {
+      String transactionId = scope.transactionIds.get(key);
+      if (transactionId == null) {
+        transactionId = MberClient.generateTransactionId();
+        scope.transactionIds.put(key, transactionId);
+      }
+      return transactionId;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.io.IOException;
+import org.apache.http.client.methods.HttpUriRequest;
+
+// Sends a request built by HTTParty and hands the response to a reader. Access
+// profiles pick a transport by name, so new ways of talking to Mber can be
+// added without touching the callers in MberClient.
+public interface Transport
+{
+  // A hung connection must fail the call that's waiting on it instead of
+  // blocking the build, so every transport gives up after these.
+  int CONNECT_TIMEOUT_MILLIS = 30 * 1000;
+  int READ_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+  String getName();
+
+  HTTParty.Call execute(HttpUriRequest request, HTTParty.BodyReader reader) throws IOException;
+}
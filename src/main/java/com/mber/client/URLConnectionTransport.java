@@ -0,0 +1,139 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+
+// Sends requests through the JVM's own HttpURLConnection. It keeps connections
+// alive on its own and honors JVM wide networking settings, like the
+// http.proxyHost and https.proxyHost system properties, which the Apache
+// client ignores.
+public class URLConnectionTransport implements Transport
+{
+  public static final String NAME = "jvm";
+
+  private final static long MAX_DRAIN_BYTES = 64 * 1024;
+
+  public String getName()
+  {
+    return NAME;
+  }
+
+  public HTTParty.Call execute(final HttpUriRequest request, final HTTParty.BodyReader reader) throws IOException
+  {
+    final HttpURLConnection connection = (HttpURLConnection)request.getURI().toURL().openConnection();
+    try {
+      connection.setUseCaches(false);
+      connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+      connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+      connection.setRequestMethod(request.getMethod());
+      for (final Header header : request.getAllHeaders()) {
+        connection.addRequestProperty(header.getName(), header.getValue());
+      }
+
+      if (request instanceof HttpEntityEnclosingRequest) {
+        final HttpEntity entity = ((HttpEntityEnclosingRequest)request).getEntity();
+        if (entity != null) {
+          writeEntity(connection, entity);
+        }
+      }
+
+      final int code = connection.getResponseCode();
+      // Error responses come through a different stream, but still have JSON bodies.
+      final InputStream content = (code >= 400) ? connection.getErrorStream() : connection.getInputStream();
+      try {
+        final HTTParty.Call call = reader.read(request, code, content);
+        // Readers like the JSON parser stop at the closing brace. Closing a fully
+        // read stream lets the JVM reuse the connection, so read what's left.
+        if (!drain(content)) {
+          connection.disconnect();
+        }
+        return call;
+      }
+      finally {
+        IOUtils.closeQuietly(content);
+      }
+    }
+    catch (IOException e) {
+      // Don't leave a half used connection around for the JVM to reuse.
+      connection.disconnect();
+      throw e;
+    }
+    catch (RuntimeException e) {
+      connection.disconnect();
+      throw e;
+    }
+  }
+
+  // Reads a bounded amount of leftover data. Returns false if there was more
+  // than that, in which case dropping the connection is cheaper than reading it.
+  private static boolean drain(final InputStream content) throws IOException
+  {
+    if (content == null) {
+      return true;
+    }
+    final byte[] buffer = new byte[4096];
+    long remaining = MAX_DRAIN_BYTES;
+    int read;
+    while ((read = content.read(buffer)) != -1) {
+      remaining -= read;
+      if (remaining < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void writeEntity(final HttpURLConnection connection, final HttpEntity entity) throws IOException
+  {
+    connection.setDoOutput(true);
+    if (entity.getContentType() != null) {
+      connection.setRequestProperty("Content-Type", entity.getContentType().getValue());
+    }
+    // Stream the entity instead of letting the connection buffer it in memory.
+    final long length = entity.getContentLength();
+    if (length >= 0 && length <= Integer.MAX_VALUE) {
+      connection.setFixedLengthStreamingMode((int)length);
+    }
+    else {
+      connection.setChunkedStreamingMode(0);
+    }
+    final OutputStream output = connection.getOutputStream();
+    try {
+      entity.writeTo(output);
+    }
+    finally {
+      output.close();
+    }
+  }
+}
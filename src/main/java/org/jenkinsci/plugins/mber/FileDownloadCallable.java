@@ -29,6 +29,7 @@ import hudson.FilePath;
 import hudson.model.BuildListener;
 import hudson.remoting.VirtualChannel;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -36,10 +37,15 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import net.sf.json.JSONObject;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
 public class FileDownloadCallable implements FilePath.FileCallable<JSONObject>, LoggingOutputStream.Listener
 {
+  private final static String PART_SUFFIX = ".part";
+  private final static String VALIDATOR_SUFFIX = ".part.validator";
+  private final static int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
   private final String url;
   private final BuildListener listener;
   private String fileName;
@@ -60,20 +66,84 @@ public class FileDownloadCallable implements FilePath.FileCallable<JSONObject>,
 
   @Override
   public JSONObject invoke(final File file, final VirtualChannel channel)
+  {
+    try {
+      this.fileName = file.getName();
+      if (file.isDirectory()) {
+        throw new IOException("Can't download to a folder: " + file.getAbsolutePath());
+      }
+
+      // Data lands in a partial file first, so a failed download can pick up where it stopped.
+      final File partFile = new File(file.getPath() + PART_SUFFIX);
+      final File validatorFile = new File(file.getPath() + VALIDATOR_SUFFIX);
+      JSONObject result = download(partFile, validatorFile, true);
+      if (result == null) {
+        // The server couldn't resume, so start over from the first byte.
+        result = download(partFile, validatorFile, false);
+      }
+      if (MberJSON.isSuccess(result)) {
+        if (file.exists() && !file.delete()) {
+          throw new IOException("Could not replace file: " + file.getAbsolutePath());
+        }
+        if (!partFile.renameTo(file)) {
+          throw new IOException("Could not move " + partFile.getAbsolutePath() + " to " + file.getAbsolutePath());
+        }
+        validatorFile.delete();
+      }
+      return result;
+    }
+    catch (final LoggingInterruptedException e) {
+      return MberJSON.aborted(e);
+    }
+    catch (final Exception e) {
+      return MberJSON.failed(e);
+    }
+  }
+
+  // Partial files are kept between attempts so downloads can resume. Once the
+  // last attempt fails, delete them so they aren't mistaken for build output,
+  // e.g. by an upload step's file patterns.
+  public static void deletePartialFiles(final FilePath file) throws IOException, InterruptedException
+  {
+    file.sibling(file.getName() + PART_SUFFIX).delete();
+    file.sibling(file.getName() + VALIDATOR_SUFFIX).delete();
+  }
+
+  // Returns null if a resumed download has to be restarted from scratch.
+  private JSONObject download(final File partFile, final File validatorFile, final boolean resume) throws IOException, InterruptedException
   {
     InputStream istream = null;
     OutputStream ostream = null;
     try {
-      this.fileName = file.getName();
       // Avoid I/O errors by setting attributes on the connection before getting data from it.
       final String redirectedURL = followRedirects(this.url);
       final URLConnection connection = new URL(redirectedURL).openConnection();
       connection.setUseCaches(false);
 
+      // Only resume if the file on the server is the one the partial file came from.
+      // Servers send the whole file instead of the range if the validator doesn't match.
+      final String validator = (resume) ? readValidator(partFile, validatorFile) : null;
+      final long offset = (validator != null) ? partFile.length() : 0;
+      if (offset > 0) {
+        connection.setRequestProperty("Range", "bytes=" + offset + "-");
+        connection.setRequestProperty("If-Range", validator);
+      }
+
+      final int code = getResponseCode(connection);
+      final boolean append = (code == HttpURLConnection.HTTP_PARTIAL) && (offset > 0);
+      if (offset > 0 && (code == HTTP_RANGE_NOT_SATISFIABLE || (append && getRangeStart(connection) != offset))) {
+        return null;
+      }
+      if (append) {
+        log("Resuming download of %s from byte %d", this.fileName, offset);
+      } else if (code == HttpURLConnection.HTTP_OK) {
+        writeValidator(connection, validatorFile);
+      }
+
       // Track expected bytes vs. downloaded bytes so we can retry corrupt downloads.
-      final long expectedByteCount = connection.getContentLength();
+      final long expectedByteCount = getContentLength(connection);
       istream = connection.getInputStream();
-      ostream = new LoggingOutputStream(new FilePath(file).write(), this, expectedByteCount);
+      ostream = new LoggingOutputStream((append) ? new FileOutputStream(partFile, true) : new FilePath(partFile).write(), this, expectedByteCount);
       final long downloadedByteCount = IOUtils.copyLarge(istream, ostream);
 
       if (downloadedByteCount < expectedByteCount) {
@@ -83,12 +153,6 @@ public class FileDownloadCallable implements FilePath.FileCallable<JSONObject>,
 
       return MberJSON.success();
     }
-    catch (final LoggingInterruptedException e) {
-      return MberJSON.aborted(e);
-    }
-    catch (final Exception e) {
-      return MberJSON.failed(e);
-    }
     finally {
       // Close the input and output streams so other build steps can access those files.
       IOUtils.closeQuietly(istream);
@@ -96,6 +160,69 @@ public class FileDownloadCallable implements FilePath.FileCallable<JSONObject>,
     }
   }
 
+  private static String readValidator(final File partFile, final File validatorFile) throws IOException
+  {
+    if (!partFile.isFile() || partFile.length() == 0 || !validatorFile.isFile()) {
+      return null;
+    }
+    final String validator = FileUtils.readFileToString(validatorFile, "UTF-8").trim();
+    return (validator.isEmpty()) ? null : validator;
+  }
+
+  // Remembers the strong ETag or Last-Modified date of a new download. Without
+  // either, the partial file can't be checked later, so it won't be resumed.
+  private static void writeValidator(final URLConnection connection, final File validatorFile) throws IOException
+  {
+    String validator = connection.getHeaderField("ETag");
+    if (validator == null || validator.startsWith("W/")) {
+      validator = connection.getHeaderField("Last-Modified");
+    }
+    if (validator == null || validator.isEmpty()) {
+      validatorFile.delete();
+      return;
+    }
+    FileUtils.writeStringToFile(validatorFile, validator, "UTF-8");
+  }
+
+  private static int getResponseCode(final URLConnection connection) throws IOException
+  {
+    if (connection instanceof HttpURLConnection) {
+      return ((HttpURLConnection)connection).getResponseCode();
+    }
+    return HttpURLConnection.HTTP_OK;
+  }
+
+  // Reads the first byte from a "Content-Range: bytes 100-199/200" header.
+  private static long getRangeStart(final URLConnection connection)
+  {
+    final String range = connection.getHeaderField("Content-Range");
+    if (range == null || !range.startsWith("bytes ")) {
+      return -1;
+    }
+    final int dash = range.indexOf('-');
+    try {
+      return (dash > 6) ? Long.parseLong(range.substring(6, dash).trim()) : -1;
+    }
+    catch (final NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  // URLConnection.getContentLength is an int, which can't describe files over 2GB.
+  private static long getContentLength(final URLConnection connection)
+  {
+    final String length = connection.getHeaderField("Content-Length");
+    if (length == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(length.trim());
+    }
+    catch (final NumberFormatException e) {
+      return -1;
+    }
+  }
+
   @Override
   public void logPercentComplete(final int percent)
   {
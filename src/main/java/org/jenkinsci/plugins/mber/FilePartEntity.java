@@ -0,0 +1,193 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package org.jenkinsci.plugins.mber;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.http.entity.AbstractHttpEntity;
+
+// Sends one byte range of a file, so large files can be uploaded in parts.
+public class FilePartEntity extends AbstractHttpEntity
+{
+  private final static int BUFFER_SIZE = 64 * 1024;
+  // Parts up to this size are read into memory once and sent from there.
+  private final static long MAX_LOADED_BYTES = 64 * 1024 * 1024;
+
+  private final File file;
+  private final long offset;
+  private final long length;
+  private byte[] data;
+
+  public FilePartEntity(final File file, final long offset, final long length)
+  {
+    this.file = file;
+    this.offset = offset;
+    this.length = length;
+    setContentType("application/octet-stream");
+  }
+
+  // Reads the range into memory and returns its MD5. The Content-MD5 header has
+  // to go out before the body, so this lets both come from one read of the file
+  // instead of reading it once for the checksum and again to send it.
+  public String load() throws IOException
+  {
+    if (this.data != null || this.length > MAX_LOADED_BYTES) {
+      return md5();
+    }
+    final byte[] data = new byte[(int)this.length];
+    final RandomAccessFile input = new RandomAccessFile(this.file, "r");
+    try {
+      input.seek(this.offset);
+      int loaded = 0;
+      while (loaded < data.length) {
+        checkInterrupted();
+        final int read = input.read(data, loaded, Math.min(BUFFER_SIZE, data.length - loaded));
+        if (read == -1) {
+          throw new IOException("File ended before part was read: " + this.file.getAbsolutePath());
+        }
+        loaded += read;
+      }
+    }
+    finally {
+      IOUtils.closeQuietly(input);
+    }
+    this.data = data;
+    return md5();
+  }
+
+  // Base64 encoded MD5 of the range, as used by the Content-MD5 header.
+  public String md5() throws IOException
+  {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("MD5");
+    }
+    catch (final NoSuchAlgorithmException e) {
+      throw new IOException(e.getMessage());
+    }
+    if (this.data != null) {
+      digest.update(this.data);
+      return new String(Base64.encodeBase64(digest.digest()), "US-ASCII");
+    }
+    final InputStream input = getContent();
+    try {
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        checkInterrupted();
+        digest.update(buffer, 0, read);
+      }
+    }
+    finally {
+      IOUtils.closeQuietly(input);
+    }
+    return new String(Base64.encodeBase64(digest.digest()), "US-ASCII");
+  }
+
+  @Override
+  public boolean isRepeatable()
+  {
+    return true;
+  }
+
+  @Override
+  public long getContentLength()
+  {
+    return this.length;
+  }
+
+  @Override
+  public InputStream getContent() throws IOException
+  {
+    if (this.data != null) {
+      return new ByteArrayInputStream(this.data);
+    }
+    final FileInputStream input = new FileInputStream(this.file);
+    try {
+      IOUtils.skipFully(input, this.offset);
+    }
+    catch (final IOException e) {
+      IOUtils.closeQuietly(input);
+      throw e;
+    }
+    return new BoundedInputStream(input, this.length);
+  }
+
+  @Override
+  public void writeTo(final OutputStream output) throws IOException
+  {
+    if (this.data != null) {
+      for (int sent = 0; sent < this.data.length; sent += BUFFER_SIZE) {
+        checkInterrupted();
+        output.write(this.data, sent, Math.min(BUFFER_SIZE, this.data.length - sent));
+      }
+      output.flush();
+      return;
+    }
+    final RandomAccessFile input = new RandomAccessFile(this.file, "r");
+    try {
+      input.seek(this.offset);
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      long remaining = this.length;
+      while (remaining > 0) {
+        checkInterrupted();
+        final int read = input.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+        if (read == -1) {
+          throw new IOException("File ended before part was sent: " + this.file.getAbsolutePath());
+        }
+        output.write(buffer, 0, read);
+        remaining -= read;
+      }
+      output.flush();
+    }
+    finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  @Override
+  public boolean isStreaming()
+  {
+    return false;
+  }
+
+  private static void checkInterrupted() throws IOException
+  {
+    // Canceled builds interrupt the thread sending the part.
+    if (Thread.interrupted()) {
+      throw new LoggingInterruptedException("Build was canceled.");
+    }
+  }
+}
@@ -26,29 +26,58 @@ THE SOFTWARE.
 package org.jenkinsci.plugins.mber;
 import com.mber.client.HTTParty;
 import com.mber.client.MberJSON;
+import com.mber.client.NamedThreadFactory;
 import hudson.FilePath;
 import hudson.model.BuildListener;
 import hudson.remoting.VirtualChannel;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 
 public class FileUploadCallable implements FilePath.FileCallable<JSONObject>, LoggingOutputStream.Listener
 {
+  // Parts of one file are sent over this many connections at once.
+  private final static int PART_THREADS = 4;
+
   private final String url;
   private final BuildListener listener;
+  private final JSONArray parts;
+  private final String completeUrl;
+  private final JSONArray completedParts;
   private String fileName;
 
   public FileUploadCallable(String url)
   {
-    this.url = url;
-    this.listener = null;
-    this.fileName = null;
+    this(url, null);
   }
 
   public FileUploadCallable(String url, BuildListener listener)
+  {
+    this(url, listener, null, null, null);
+  }
+
+  // Uploads a file in parts. Each part has a partNumber, url, offset, and size.
+  // Parts already listed in completedParts with the same number, range, and
+  // checksum are skipped, so a failed upload can be resumed by passing back the
+  // completedParts it returned. That relies on the server keeping the parts of
+  // a retried upload, which it does for requests with the same transaction ID.
+  public FileUploadCallable(String url, BuildListener listener, JSONArray parts, String completeUrl, JSONArray completedParts)
   {
     this.url = url;
     this.listener = listener;
+    this.parts = parts;
+    this.completeUrl = completeUrl;
+    this.completedParts = completedParts;
     this.fileName = null;
   }
 
@@ -57,6 +86,9 @@ public class FileUploadCallable implements FilePath.FileCallable<JSONObject>, Lo
   {
     try {
       this.fileName = file.getName();
+      if (this.parts != null && !this.parts.isEmpty()) {
+        return invokeParts(file);
+      }
       String response = HTTParty.put(this.url, file, this).body;
       if (response != null && !response.isEmpty()) {
         return MberJSON.failed(response);
@@ -80,6 +112,147 @@ public class FileUploadCallable implements FilePath.FileCallable<JSONObject>, Lo
     log("Uploaded %d%% of %s", percent, this.fileName);
   }
 
+  private JSONObject invokeParts(final File file) throws IOException
+  {
+    if (!file.isFile()) {
+      throw new IOException("Not a file: " + file.getAbsolutePath());
+    }
+
+    // Parts finished by an earlier attempt are kept if their data hasn't changed.
+    final Map<Integer, JSONObject> completed = new TreeMap<Integer, JSONObject>();
+    final List<JSONObject> missing = new ArrayList<JSONObject>();
+    for (int i = 0; i < this.parts.size(); ++i) {
+      final JSONObject part = this.parts.getJSONObject(i);
+      final JSONObject done = findCompletedPart(file, part);
+      if (done != null) {
+        completed.put(part.getInt("partNumber"), done);
+      } else {
+        missing.add(part);
+      }
+    }
+    if (!completed.isEmpty()) {
+      log("Resuming upload of %s with %d of %d parts already sent", this.fileName, completed.size(), this.parts.size());
+    }
+
+    final JSONArray errors = new JSONArray();
+    boolean aborted = false;
+    if (!missing.isEmpty()) {
+      final ExecutorService pool = Executors.newFixedThreadPool(Math.min(PART_THREADS, missing.size()), new NamedThreadFactory("Mber part uploader"));
+      try {
+        final List<Future<JSONObject>> futures = new ArrayList<Future<JSONObject>>();
+        for (final JSONObject part : missing) {
+          futures.add(pool.submit(new Callable<JSONObject>() {
+            public JSONObject call() throws IOException
+            {
+              return uploadPart(file, part);
+            }
+          }));
+        }
+        for (final Future<JSONObject> future : futures) {
+          try {
+            final JSONObject done = future.get();
+            completed.put(done.getInt("partNumber"), done);
+            log("Uploaded part %d of %d of %s", done.getInt("partNumber"), this.parts.size(), this.fileName);
+          }
+          catch (final ExecutionException e) {
+            aborted |= e.getCause() instanceof LoggingInterruptedException;
+            errors.add(e.getCause().getMessage());
+          }
+        }
+      }
+      catch (final InterruptedException e) {
+        pool.shutdownNow();
+        aborted = true;
+        errors.add("Build was canceled.");
+      }
+      finally {
+        pool.shutdown();
+      }
+    }
+
+    JSONObject json;
+    if (aborted) {
+      json = MberJSON.aborted(errors.join("\n"));
+    } else if (!errors.isEmpty()) {
+      json = MberJSON.failed(errors);
+    } else {
+      json = completeParts(completed);
+      if (MberJSON.isSuccess(json)) {
+        json.put("url", this.url);
+        json.put("path", file.getAbsolutePath());
+      }
+    }
+    json.put("completedParts", JSONArray.fromObject(completed.values()));
+    return json;
+  }
+
+  private JSONObject completeParts(final Map<Integer, JSONObject> completed) throws IOException
+  {
+    if (this.completeUrl == null || this.completeUrl.isEmpty()) {
+      return MberJSON.success();
+    }
+    // The server checks every part's checksum before stitching the file together.
+    final JSONArray list = new JSONArray();
+    for (final JSONObject done : completed.values()) {
+      final JSONObject entry = new JSONObject();
+      entry.put("partNumber", done.getInt("partNumber"));
+      entry.put("md5", done.getString("md5"));
+      list.add(entry);
+    }
+    final JSONObject data = new JSONObject();
+    data.put("parts", list);
+    final HTTParty.Call call = HTTParty.post(this.completeUrl, data);
+    if (!isSuccessCode(call.code)) {
+      return MberJSON.failed(String.format("Completing upload of %s failed with HTTP %d: %s", this.fileName, call.code, call.body));
+    }
+    return MberJSON.success();
+  }
+
+  private JSONObject uploadPart(final File file, final JSONObject part) throws IOException
+  {
+    final FilePartEntity entity = makeEntity(file, part);
+    final String md5 = entity.load();
+    final HTTParty.Call call = HTTParty.put(part.getString("url"), entity, md5);
+    if (!isSuccessCode(call.code)) {
+      throw new IOException(String.format("Uploading part %d of %s failed with HTTP %d: %s", part.getInt("partNumber"), this.fileName, call.code, call.body));
+    }
+    final JSONObject done = new JSONObject();
+    done.put("partNumber", part.getInt("partNumber"));
+    done.put("offset", part.getLong("offset"));
+    done.put("size", part.getLong("size"));
+    done.put("md5", md5);
+    return done;
+  }
+
+  // Finds an earlier attempt's record of a part, as long as the file's data for
+  // that range still has the checksum that was sent.
+  private JSONObject findCompletedPart(final File file, final JSONObject part) throws IOException
+  {
+    if (this.completedParts == null) {
+      return null;
+    }
+    for (int i = 0; i < this.completedParts.size(); ++i) {
+      final JSONObject done = this.completedParts.getJSONObject(i);
+      if (done.optInt("partNumber", -1) == part.getInt("partNumber")
+          && done.optLong("offset", -1) == part.getLong("offset")
+          && done.optLong("size", -1) == part.getLong("size")
+          && done.optString("md5", "").equals(makeEntity(file, part).md5())) {
+        return done;
+      }
+    }
+    return null;
+  }
+
+  private static FilePartEntity makeEntity(final File file, final JSONObject part)
+  {
+    return new FilePartEntity(file, part.getLong("offset"), part.getLong("size"));
+  }
+
+  private static boolean isSuccessCode(final int code)
+  {
+    return code >= 200 && code < 300;
+  }
+
   private void log(final String message, final Object... args)
   {
     if (this.listener != null && !message.isEmpty()) {
@@ -24,11 +24,20 @@ THE SOFTWARE.
 */
 
 package org.jenkinsci.plugins.mber;
+import com.mber.client.CircuitBreaker;
+import com.mber.client.CircuitBreakerTransport;
+import com.mber.client.HTTParty;
 import com.mber.client.MberClient;
+import com.mber.client.PooledTransport;
+import com.mber.client.RequestLimiter;
+import com.mber.client.ThrottledTransport;
+import com.mber.client.Transport;
+import com.mber.client.URLConnectionTransport;
 import hudson.Extension;
 import hudson.model.Describable;
 import hudson.model.Descriptor;
 import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
 import hudson.util.Secret;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
@@ -43,14 +52,34 @@ public class MberAccessProfile implements Describable<MberAccessProfile>
   private final Secret password;
   private final String url;
 
-  @DataBoundConstructor
+  // Version 1.6 lets profiles pick how requests are sent to Mber.
+  private final String transport;
+
+  // Version 1.6 also lets profiles limit how hard they hit Mber. Zero means no limit.
+  private final int requestsPerSecond;
+  private final int maxConcurrentRequests;
+
   public MberAccessProfile(String name, String application, String username, String password, String url)
+  {
+    this(name, application, username, password, url, null);
+  }
+
+  public MberAccessProfile(String name, String application, String username, String password, String url, String transport)
+  {
+    this(name, application, username, password, url, transport, 0, 0);
+  }
+
+  @DataBoundConstructor
+  public MberAccessProfile(String name, String application, String username, String password, String url, String transport, int requestsPerSecond, int maxConcurrentRequests)
   {
     this.name = name;
     this.application = application;
     this.username = username;
     this.password = Secret.fromString(password);
     this.url = url;
+    this.transport = transport;
+    this.requestsPerSecond = Math.max(0, requestsPerSecond);
+    this.maxConcurrentRequests = Math.max(0, maxConcurrentRequests);
   }
 
   public String getName()
@@ -86,6 +115,70 @@ public class MberAccessProfile implements Describable<MberAccessProfile>
     return "https://member.firepub.net/";
   }
 
+  public String getTransport()
+  {
+    if (this.transport == null || this.transport.isEmpty()) {
+      return getDefaultTransport();
+    }
+    return this.transport;
+  }
+
+  public static String getDefaultTransport()
+  {
+    return PooledTransport.NAME;
+  }
+
+  public int getRequestsPerSecond()
+  {
+    return this.requestsPerSecond;
+  }
+
+  public int getMaxConcurrentRequests()
+  {
+    return this.maxConcurrentRequests;
+  }
+
+  // Every client made from this profile shares one limiter, so the limits
+  // hold across all the builds using it. Returns null when there are no limits.
+  public RequestLimiter getRequestLimiter()
+  {
+    if (getRequestsPerSecond() <= 0 && getMaxConcurrentRequests() <= 0) {
+      return null;
+    }
+    String key = getName() + " " + getUrl() + " " + getApplication();
+    return RequestLimiter.forKey(key, getRequestsPerSecond(), getMaxConcurrentRequests());
+  }
+
+  // Every profile pointing at the same Mber URL shares a breaker, since an
+  // outage affects them all the same way.
+  public CircuitBreaker getCircuitBreaker()
+  {
+    return CircuitBreaker.forKey(getUrl());
+  }
+
+  // Creates a client that talks to Mber using this profile's connection settings.
+  public MberClient makeMberClient()
+  {
+    return configure(new MberClient(getUrl(), getApplication()));
+  }
+
+  // Restores a client from saved state, using this profile's connection settings.
+  public MberClient makeMberClient(final JSONObject state)
+  {
+    return configure(new MberClient(state));
+  }
+
+  private MberClient configure(final MberClient mber)
+  {
+    Transport transport = new CircuitBreakerTransport(HTTParty.getTransport(getTransport()), getCircuitBreaker());
+    RequestLimiter limiter = getRequestLimiter();
+    if (limiter != null) {
+      transport = new ThrottledTransport(transport, limiter);
+    }
+    mber.setTransport(transport);
+    return mber;
+  }
+
   public Descriptor<MberAccessProfile> getDescriptor()
   {
     return Jenkins.getInstance().getDescriptor(MberAccessProfile.class);
@@ -109,9 +202,9 @@ public class MberAccessProfile implements Describable<MberAccessProfile>
       return FormValidation.error("Invalid Mber URL. Clear the field and save the form to use the default value.");
     }
 
-    public FormValidation doValidateLogin(@QueryParameter String application, @QueryParameter String username, @QueryParameter String password, @QueryParameter String url)
+    public FormValidation doValidateLogin(@QueryParameter String application, @QueryParameter String username, @QueryParameter String password, @QueryParameter String url, @QueryParameter String transport)
     {
-      MberClient mber = new MberClient(url, application);
+      MberClient mber = new MberAccessProfile("", application, username, password, url, transport).makeMberClient();
       JSONObject response = mber.login(username, Secret.fromString(password).getPlainText());
       if (response.getString("status").equals("Success")) {
         return FormValidation.ok("Success!");
@@ -119,6 +212,25 @@ public class MberAccessProfile implements Describable<MberAccessProfile>
       return FormValidation.error(response.getString("error"));
     }
 
+    public FormValidation doCheckRequestsPerSecond(@QueryParameter String value)
+    {
+      return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    public FormValidation doCheckMaxConcurrentRequests(@QueryParameter String value)
+    {
+      return FormValidation.validateNonNegativeInteger(value);
+    }
+
+    // Called when the transport selector for an access profile is populated.
+    public ListBoxModel doFillTransportItems()
+    {
+      ListBoxModel model = new ListBoxModel();
+      model.add("Pooled connections", PooledTransport.NAME);
+      model.add("JVM connections (honors JVM proxy settings)", URLConnectionTransport.NAME);
+      return model;
+    }
+
     // This is necessary so the jelly config file can populate a default URL value.
     // Since these are in the global configuration, only the descriptor is available.
     public String getDefaultUrl()
@@ -0,0 +1,138 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package org.jenkinsci.plugins.mber;
+import com.mber.client.FolderPlanner;
+import com.mber.client.MberJSON;
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.InvisibleAction;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import java.util.HashMap;
+import java.util.Map;
+import net.sf.json.JSONObject;
+
+// Holds what a build has already set up in Mber, so every Mber step in the
+// build can pick up where the last one left off instead of finding the same
+// project, build and folders again. The client state has an access token in
+// it, so everything here is transient and never written to disk. The action is
+// only added once there's something to keep, and is removed when the build
+// finishes so it doesn't end up in build.xml.
+public class MberBuildContext extends InvisibleAction
+{
+  private transient JSONObject client;
+  private transient Map<String, String> folders;
+
+  // Returns a copy of the saved client state, but only if it was saved by a
+  // client talking to the same Mber URL and application.
+  public synchronized JSONObject getClient(final String url, final String application)
+  {
+    if (this.client == null) {
+      return null;
+    }
+    if (!MberJSON.getString(this.client, "url").equals(url) || !MberJSON.getString(this.client, "application").equals(application)) {
+      return null;
+    }
+    return MberJSON.copy(this.client);
+  }
+
+  public synchronized void setClient(final JSONObject client)
+  {
+    // Folders belong to the Mber build, so they don't carry over to a different one.
+    if (!MberJSON.getString(client, "buildId").equals(getBuildId())) {
+      this.folders = null;
+    }
+    this.client = MberJSON.copy(client);
+  }
+
+  public synchronized String getProjectId()
+  {
+    return MberJSON.getString(this.client, "projectId");
+  }
+
+  public synchronized String getBuildId()
+  {
+    return MberJSON.getString(this.client, "buildId");
+  }
+
+  // Directory IDs for folders that have already been added to the Mber build.
+  public synchronized String getFolder(final String folder)
+  {
+    return (this.folders != null) ? this.folders.get(FolderPlanner.normalize(folder)) : null;
+  }
+
+  public synchronized void putFolder(final String folder, final String directoryId)
+  {
+    if (this.folders == null) {
+      this.folders = new HashMap<String, String>();
+    }
+    this.folders.put(FolderPlanner.normalize(folder), directoryId);
+  }
+
+  // Returns the build's context without adding one, or null if no Mber step
+  // has saved anything yet. Use this when only reading.
+  public static MberBuildContext find(final AbstractBuild<?, ?> build)
+  {
+    synchronized (MberBuildContext.class) {
+      return build.getAction(MberBuildContext.class);
+    }
+  }
+
+  // Returns the build's context, adding one if needed. Use this when saving.
+  public static MberBuildContext forBuild(final AbstractBuild<?, ?> build)
+  {
+    synchronized (MberBuildContext.class) {
+      MberBuildContext action = build.getAction(MberBuildContext.class);
+      if (action == null) {
+        action = new MberBuildContext();
+        build.addAction(action);
+      }
+      return action;
+    }
+  }
+
+  public static void clear(final AbstractBuild<?, ?> build)
+  {
+    synchronized (MberBuildContext.class) {
+      MberBuildContext action = build.getAction(MberBuildContext.class);
+      if (action != null) {
+        build.getActions().remove(action);
+      }
+    }
+  }
+
+  // Drops the context once the build is done, however it ended. Later steps
+  // can't use it anymore, and it would otherwise be saved with the build.
+  @Extension
+  public static class Cleaner extends RunListener<AbstractBuild<?, ?>>
+  {
+    @Override
+    public void onCompleted(final AbstractBuild<?, ?> build, final TaskListener listener)
+    {
+      clear(build);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package org.jenkinsci.plugins.mber;
+import com.mber.client.CallHistory;
+import hudson.model.AbstractBuild;
+import hudson.model.InvisibleAction;
+
+// Holds the calls a build made to Mber, so they can be logged if the build
+// fails. It's attached to the build rather than the publisher, so concurrent
+// builds of a job each get their own history. The history itself is transient,
+// so it's never written to disk with the build or the job.
+public class MberCallHistoryAction extends InvisibleAction
+{
+  private transient CallHistory history;
+
+  public synchronized CallHistory getHistory()
+  {
+    if (this.history == null) {
+      this.history = new CallHistory();
+    }
+    return this.history;
+  }
+
+  public static MberCallHistoryAction forBuild(final AbstractBuild<?, ?> build)
+  {
+    synchronized (MberCallHistoryAction.class) {
+      MberCallHistoryAction action = build.getAction(MberCallHistoryAction.class);
+      if (action == null) {
+        action = new MberCallHistoryAction();
+        build.addAction(action);
+      }
+      return action;
+    }
+  }
+
+  public static void clear(final AbstractBuild<?, ?> build)
+  {
+    synchronized (MberCallHistoryAction.class) {
+      MberCallHistoryAction action = build.getAction(MberCallHistoryAction.class);
+      if (action != null) {
+        build.getActions().remove(action);
+      }
+    }
+  }
+}
@@ -24,8 +24,10 @@ THE SOFTWARE.
 */
 
 package org.jenkinsci.plugins.mber;
+import com.mber.client.DocumentIterator;
 import com.mber.client.MberClient;
 import com.mber.client.MberJSON;
+import com.mber.client.NamedThreadFactory;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
@@ -37,14 +39,21 @@ import hudson.tasks.BuildStepDescriptor;
 import hudson.util.ListBoxModel;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
-import net.sf.json.JSONArray;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 public class MberDownloader extends Builder
 {
+  // Documents are looked up in parallel, but not so many that a step floods Mber.
+  private static final int RESOLVE_THREADS = 8;
+
   private final String accessProfileName;
   private final String files;
   private final boolean overwriteExistingFiles;
@@ -144,126 +153,181 @@ public class MberDownloader extends Builder
       return isOptional();
     }
 
-    ArrayList<JSONObject> documents = new ArrayList<JSONObject>();
     if (!isUseTags()) {
-      // Look for files with matching IDs.
-      for (final String documentId : fileIdentifiers) {
-        final JSONObject response = new Retryable<JSONObject>(listener.getLogger(), getAttempts()) {
+      return downloadDocumentsWithIds(mber, workspace, listener, fileIdentifiers) || isOptional();
+    }
+
+    // Look for files with matching tags, a page at a time. Each page retries
+    // on its own. Document indexing isn't instant, so the first page also
+    // retries if nothing's found.
+    final DocumentIterator documents = new DocumentIterator(mber, fileIdentifiers, DocumentIterator.DEFAULT_PAGE_SIZE) {
+      @Override
+      protected JSONObject fetchPage(final int offset, final int limit)
+      {
+        return new Retryable<JSONObject>(listener.getLogger(), getAttempts()) {
           @Override
           public JSONObject call()
           {
-            final JSONObject result = mber.readDocument(documentId);
-            // Only retry failures. Semi-successful responses like NotFound, won't retry.
-            if (MberJSON.isFailed(result)) {
+            final JSONObject result = mber.findDocumentsWithTags(fileIdentifiers, offset, limit);
+            if (!MberJSON.isSuccess(result)) {
               throw new RetryException(MberJSON.getString(result, "error"));
             }
+            if (offset == 0 && MberJSON.getArray(result, "results").isEmpty()) {
+              throw new RetryException("Failed to find files with tags: %s", StringUtils.join(fileIdentifiers, ", "));
+            }
             return result;
           }
         }.run();
+      }
+    };
+
+    // Let the user know we couldn't find any files. The Retryable handles exceptions e.g. network connectivity issues.
+    if (!documents.hasNext()) {
+      log(listener, "Failed to find files with tags: %s", StringUtils.join(fileIdentifiers, ", "));
+      return isOptional();
+    }
+
+    // Make sure each found document is downloadable so we can use it in the download API.
+    while (documents.hasNext()) {
+      final JSONObject document = documents.next();
+      if (!MberJSON.getBooleanOrFalse(document, "canDownload")) {
+        final String documentId = document.getString("documentId");
+        log(listener, "The file with ID %s is not downloadable from Mber. Check that the file has been uploaded or synced to a CDN.", documentId);
+        return isOptional();
+      }
+      if (!downloadDocument(mber, workspace, listener, document)) {
+        return isOptional();
+      }
+    }
+
+    // A later page failed even after retrying.
+    if (documents.getFailure() != null) {
+      log(listener, "Failed to find files with tags: %s", StringUtils.join(fileIdentifiers, ", "));
+      log(listener, MberJSON.getString(documents.getFailure(), "error"));
+      return isOptional();
+    }
+
+    return true;
+  }
+
+  // Looks up every document at once on a small pool of threads. Files are still
+  // downloaded in the order their IDs were listed, so when two IDs share a name
+  // the result doesn't depend on which lookup finished first. Mber reads
+  // documents one ID at a time, so there's nothing to batch lookups into.
+  private boolean downloadDocumentsWithIds(final MberClient mber, final FilePath workspace, final BuildListener listener, final String[] documentIds)
+  {
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(RESOLVE_THREADS, documentIds.length)), new NamedThreadFactory("Mber document lookup"));
+    try {
+      final List<Future<JSONObject>> lookups = new ArrayList<Future<JSONObject>>(documentIds.length);
+      for (final String documentId : documentIds) {
+        lookups.add(executor.submit(new Callable<JSONObject>() {
+          public JSONObject call()
+          {
+            return new Retryable<JSONObject>(listener.getLogger(), getAttempts()) {
+              @Override
+              public JSONObject call()
+              {
+                final JSONObject result = mber.readDocument(documentId);
+                // Only retry failures. Semi-successful responses like NotFound, won't retry.
+                if (MberJSON.isFailed(result)) {
+                  throw new RetryException(MberJSON.getString(result, "error"));
+                }
+                return result;
+              }
+            }.run();
+          }
+        }));
+      }
+
+      for (int i = 0; i < documentIds.length; ++i) {
+        final String documentId = documentIds[i];
+        final JSONObject response = lookups.get(i).get();
 
         // Let the user know we couldn't find their file. The Retryable handles exceptions e.g. network connectivity issues.
         if (!MberJSON.isSuccess(response)) {
           log(listener, "A file with ID %s was not found in Mber. Check that you spelled the file identifier correctly.", documentId);
-          return isOptional();
+          return false;
         }
 
         // Make sure the document is flagged as downloadable so we can use it in the download API.
         final JSONObject document = MberJSON.getObject(response, "result");
         if (!MberJSON.getBooleanOrFalse(document, "canDownload")) {
           log(listener, "The file with ID %s is not downloadable from Mber. Check that the file has been uploaded or synced to a CDN.", documentId);
-          return isOptional();
+          return false;
         }
 
-        documents.add(document);
+        if (!downloadDocument(mber, workspace, listener, document)) {
+          return false;
+        }
       }
+      return true;
     }
-    else {
-      // Look for files with matching tags.
-      final JSONObject response = new Retryable<JSONObject>(listener.getLogger(), getAttempts()) {
-        @Override
-        public JSONObject call()
-        {
-          final JSONObject result = mber.findDocumentsWithTags(fileIdentifiers);
-          // Document indexing isn't instant, so retry if nothing's found.
-          if (!MberJSON.isSuccess(result)) {
-            throw new RetryException(MberJSON.getString(result, "error"));
-          }
-          if (MberJSON.getArray(result, "results").isEmpty()) {
-            throw new RetryException("Failed to find files with tags: %s", StringUtils.join(fileIdentifiers, ", "));
-          }
-          return result;
-        }
-      }.run();
+    catch (final InterruptedException e) {
+      log(listener, e.getLocalizedMessage());
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    catch (final ExecutionException e) {
+      log(listener, e.getCause().getLocalizedMessage());
+      return false;
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
 
-      // Let the user know we couldn't find any files. The Retryable handles exceptions e.g. network connectivity issues.
-      if (!MberJSON.isSuccess(response) || MberJSON.getArray(response, "results").isEmpty()) {
-        log(listener, "Failed to find files with tags: %s", StringUtils.join(fileIdentifiers, ", "));
-        return isOptional();
-      }
+  private boolean downloadDocument(final MberClient mber, final FilePath workspace, final BuildListener listener, final JSONObject document)
+  {
+    final String name = document.getString("name");
+    final FilePath file = workspace.child(name);
 
-      // Make sure all the found documents as downloadable so we can use them in the download API.
-      final JSONArray results = MberJSON.getArray(response, "results");
-      final Iterator<JSONObject> itr = results.iterator();
-      while (itr.hasNext()) {
-        final JSONObject document = itr.next();
-        if (!MberJSON.getBooleanOrFalse(document, "canDownload")) {
-          final String documentId = document.getString("documentId");
-          log(listener, "The file with ID %s is not downloadable from Mber. Check that the file has been uploaded or synced to a CDN.", documentId);
-          return isOptional();
-        }
-        documents.add(document);
+    // Check for existing files before downloading new ones that overwrite them.
+    try {
+      if (!isOverwriteExistingFiles() && file.exists()) {
+        log(listener, "A file named %s already exists in the workspace.", name);
+        return false;
       }
     }
-
-    // The user specified files to download but we didn't find any in Mber.
-    if (fileIdentifiers.length > 0 && documents.isEmpty()) {
-      log(listener, "No dowloadable files where found in Mber. Check that you spelled the file identifiers correctly.");
-      return isOptional();
+    catch (final InterruptedException e) {
+      log(listener, e.getLocalizedMessage());
+      return false;
+    }
+    catch (final IOException e) {
+      log(listener, e.getLocalizedMessage());
+      return false;
     }
 
-    for (final JSONObject document : documents) {
-      final String name = document.getString("name");
-      final FilePath file = workspace.child(name);
+    // Download the file from Mber, retrying as necessary.
+    final String documentId = document.getString("documentId");
+    log(listener, "Dowloading file %s", name);
+    final JSONObject response = new Retryable<JSONObject>(listener.getLogger(), getAttempts()) {
+      @Override
+      public JSONObject call()
+      {
+        final JSONObject response = mber.download(file, documentId, isShowProgress());
+        if (!MberJSON.isSuccess(response) && !MberJSON.isAborted(response)) {
+          throw new RetryException(response.getString("error"));
+        }
+        return response;
+      }
+    }.run();
 
-      // Check for existing files before downloading new ones that overwrite them.
+    // The download's already been retried, so bail if it's not successful.
+    if (!MberJSON.isSuccess(response)) {
+      log(listener, "Failed to download file %s", file);
+      log(listener, response.getString("error"));
       try {
-        if (!isOverwriteExistingFiles() && file.exists()) {
-          log(listener, "A file named %s already exists in the workspace.", name);
-          return isOptional();
-        }
+        FileDownloadCallable.deletePartialFiles(file);
       }
       catch (final InterruptedException e) {
         log(listener, e.getLocalizedMessage());
-        return isOptional();
+        Thread.currentThread().interrupt();
       }
       catch (final IOException e) {
         log(listener, e.getLocalizedMessage());
-        return isOptional();
-      }
-
-      // Download the file from Mber, retrying as necessary.
-      final String documentId = document.getString("documentId");
-      log(listener, "Dowloading file %s", name);
-      final JSONObject response = new Retryable<JSONObject>(listener.getLogger(), getAttempts()) {
-        @Override
-        public JSONObject call()
-        {
-          final JSONObject response = mber.download(file, documentId, isShowProgress());
-          if (!MberJSON.isSuccess(response) && !MberJSON.isAborted(response)) {
-            throw new RetryException(response.getString("error"));
-          }
-          return response;
-        }
-      }.run();
-
-      // The download's already been retried, so bail if it's not successful.
-      if (!MberJSON.isSuccess(response)) {
-        log(listener, "Failed to download file %s", file);
-        log(listener, response.getString("error"));
-        return isOptional();
       }
+      return false;
     }
-
     return true;
   }
 
@@ -283,7 +347,7 @@ public class MberDownloader extends Builder
 
   private MberClient makeMberClient(final BuildListener listener, final MberAccessProfile accessProfile)
   {
-    final MberClient mber = new MberClient(accessProfile.getUrl(), accessProfile.getApplication());
+    final MberClient mber = accessProfile.makeMberClient();
     mber.setListener(listener);
     return mber;
   }
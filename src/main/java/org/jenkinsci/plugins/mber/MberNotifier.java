@@ -26,8 +26,13 @@ THE SOFTWARE.
 package org.jenkinsci.plugins.mber;
 import com.mber.client.MberClient;
 import com.mber.client.BuildStatus;
+import com.mber.client.CallHistory;
+import com.mber.client.CallRecord;
+import com.mber.client.CircuitBreaker;
 import com.mber.client.HTTParty;
 import com.mber.client.MberJSON;
+import com.mber.client.NamedThreadFactory;
+import com.mber.client.RequestLimiter;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
@@ -46,26 +51,35 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
-import net.sf.json.JSONSerializer;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.StaplerRequest;
 
 public class MberNotifier extends Notifier
 {
+  // Artifacts are uploaded this many at a time.
+  private final static int UPLOAD_THREADS = 4;
+
   private final String buildName;
   private final String buildDescription;
   private final boolean uploadConsoleLog;
   private final boolean uploadTestResults;
-  private JSONObject mberConfig;
-  private Map<String, List<HTTParty.Call>> callHistory;
+  // Version 1.6 keeps call history and client state on each build instead of saving them with the job.
+  transient private JSONObject mberConfig;
+  transient private Map<String, List<HTTParty.Call>> callHistory;
 
   // Version 1.3 profiles named Mber access profiles.
   private String accessProfileName;
@@ -269,34 +283,15 @@ public class MberNotifier extends Notifier
   }
 
   private void recordCallHistory(final AbstractBuild build, final MberClient mber) {
-    if (this.callHistory == null) {
-      this.callHistory = new HashMap();
-    }
-    String buildId = getCallHistoryId(build);
-    List<HTTParty.Call> calls = getCallHistory(build);
-    calls.addAll(mber.getCallHistory());
-    this.callHistory.put(buildId, calls);
+    getCallHistory(build).addAll(mber.getCallHistory());
   }
 
-  List<HTTParty.Call> getCallHistory(final AbstractBuild build) {
-    String buildId = getCallHistoryId(build);
-    if (this.callHistory != null && this.callHistory.containsKey(buildId)) {
-      return this.callHistory.get(buildId);
-    }
-    return new ArrayList();
+  CallHistory getCallHistory(final AbstractBuild build) {
+    return MberCallHistoryAction.forBuild(build).getHistory();
   }
 
   private void clearCallHistory(final AbstractBuild build) {
-    if (this.callHistory != null) {
-      String buildId = getCallHistoryId(build);
-      this.callHistory.remove(buildId);
-    }
-  }
-
-  private String getCallHistoryId(final AbstractBuild build) {
-    // Use the URL to the build as a unique ID, since it's guaranteed to be unique,
-    // unlike the getId() function which just returns the time the build started.
-    return build.getUrl();
+    MberCallHistoryAction.clear(build);
   }
 
   private String[] getUploadTags(final AbstractBuild build, final BuildListener listener, final FilePath file, final int index)
@@ -359,15 +354,18 @@ public class MberNotifier extends Notifier
     if (build.getResult().equals(Result.FAILURE)) {
       // Aggregate the call history for both prebuild and perform.
       recordCallHistory(build, mber);
+      CallHistory history = getCallHistory(build);
       log(listener, "The following calls were made to Mber:");
-      for (HTTParty.Call call : getCallHistory(build)) {
-        // Don't show query strings as part of the URI. They can contain sensitive data like tokens.
-        String url = call.uri.toString();
-        int offset = url.indexOf('?');
-        if (offset >= 0) {
-          url = url.substring(0, offset);
+      long omitted = history.getTotal() - history.size();
+      if (omitted > 0) {
+        log(listener, "("+omitted+" earlier calls not shown)");
+      }
+      // Records never include query strings. They can contain sensitive data like tokens.
+      for (CallRecord call : history.toList()) {
+        log(listener, call.toString());
+        if (call.isFailed() && !call.body.isEmpty()) {
+          log(listener, "  "+call.body);
         }
-        log(listener, call.method+" "+url+" - "+call.code);
       }
     }
     // Clear the call history for this build so memory usage doesn't keep growing.
@@ -381,6 +379,15 @@ public class MberNotifier extends Notifier
       return MberJSON.failed("Couldn't resolve environment variables in artifact folder "+getArtifactFolder(index));
     }
 
+    // Test results and the console log usually share a folder that's already on the build.
+    final MberBuildContext context = MberBuildContext.forBuild(build);
+    final String knownDirectoryId = context.getFolder(resolvedArtifactFolder);
+    if (knownDirectoryId != null) {
+      JSONObject success = MberJSON.success();
+      success.put("directoryId", knownDirectoryId);
+      return success;
+    }
+
     if (logging) {
       log(listener, "Creating artifact folder "+resolvedArtifactFolder);
     }
@@ -396,6 +403,9 @@ public class MberNotifier extends Notifier
       return response;
     }
 
+    context.putFolder(resolvedArtifactFolder, uploadDirectoryId);
+    // The client now knows about one more directory on the build.
+    context.setClient(mber.toJSON());
     JSONObject success = MberJSON.success();
     success.put("directoryId", uploadDirectoryId);
     return success;
@@ -449,7 +459,7 @@ public class MberNotifier extends Notifier
     // Links upload directly to the base artifact folder since their folder structure is unkown.
     File base = new File(resolveArtifactFolder(build, listener, index));
     String workspace = build.getWorkspace().getRemote();
-    HashMap namedArtifacts = new HashMap();
+    Map<FilePath, String> namedArtifacts = new HashMap<FilePath, String>();
     for (FilePath path : artifacts) {
       if (path != null) {
         String name = (new File(base, File.pathSeparator)).getPath();
@@ -475,12 +485,15 @@ public class MberNotifier extends Notifier
     }
   }
 
-  private MberClient makeMberClient()
+  private MberClient makeMberClient(final AbstractBuild build)
   {
-    if (mberConfig == null) {
-      return new MberClient(getMberUrl(), getApplication());
+    final MberAccessProfile profile = getDescriptor().getAccessProfile(getAccessProfileName());
+    final MberBuildContext context = MberBuildContext.find(build);
+    final JSONObject state = (context != null) ? context.getClient(getMberUrl(), getApplication()) : null;
+    if (state == null) {
+      return (profile != null) ? profile.makeMberClient() : new MberClient(getMberUrl(), getApplication());
     }
-    return new MberClient(this.mberConfig);
+    return (profile != null) ? profile.makeMberClient(state) : new MberClient(state);
   }
 
   private void log(final BuildListener listener, final String message)
@@ -529,8 +542,8 @@ public class MberNotifier extends Notifier
   {
     try {
       String url = build.getAbsoluteUrl() + action.getUrlName() + "/api/json";
-      String response = HTTParty.get(url).body;
-      return (JSONObject)JSONSerializer.toJSON(response);
+      JSONObject response = HTTParty.getJSON(url, null).json;
+      return (response != null) ? response : new JSONObject();
     }
     catch (IOException e) {
       return new JSONObject();
@@ -582,12 +595,12 @@ public class MberNotifier extends Notifier
   @Override
   public boolean prebuild(AbstractBuild build, BuildListener listener)
   {
-    // Clear the old call history. The notifier persists on a per-job basis.
+    // Start with a fresh call history in case the build is being rerun.
     clearCallHistory(build);
-    // Clear the cached Mber config. It will have build IDs and like from previous runs.
-    this.mberConfig = null;
+    // Clear the saved Mber client. It will have build IDs and like from previous runs.
+    MberBuildContext.clear(build);
 
-    MberClient mber = makeMberClient();
+    MberClient mber = makeMberClient(build);
     mber.setListener(listener);
 
     log(listener, "Connecting to Mber at "+mber.getURL());
@@ -613,7 +626,7 @@ public class MberNotifier extends Notifier
       return fail(build, listener, mber, response.getString("error"));
     }
 
-    this.mberConfig = mber.toJSON();
+    MberBuildContext.forBuild(build).setClient(mber.toJSON());
     recordCallHistory(build, mber);
 
     return true;
@@ -622,7 +635,7 @@ public class MberNotifier extends Notifier
   @Override
   public boolean perform(AbstractBuild build, Launcher launcher, BuildListener listener)
   {
-    MberClient mber = makeMberClient();
+    final MberClient mber = makeMberClient(build);
     mber.setListener(listener);
 
     if (!isUploadArtifacts() || isFailedBuild(build)) {
@@ -631,6 +644,9 @@ public class MberNotifier extends Notifier
 
     JSONArray errors = new JSONArray();
 
+    // Find every destination's artifacts first, so all their folders can be created together.
+    List<Map<FilePath, String>> destinationFolders = new ArrayList<Map<FilePath, String>>();
+    Set<String> allFolders = new LinkedHashSet<String>();
     for (int index = 0; index < getUploadDestinations().size(); ++index) {
       FilePath[] artifacts = findBuildArtifacts(build, listener, index);
       if (artifacts.length == 0) {
@@ -642,31 +658,75 @@ public class MberNotifier extends Notifier
         errors.add(response.getString("error"));
       }
 
-      final boolean overwriteFiles = isOverwriteExistingFiles(index);
-      final boolean isLink = isLinkToLocalFiles(index);
-
       Map<FilePath, String> buildArtifactFolders = findBuildArtifactFolders(build, listener, artifacts, index);
-      Iterator<Map.Entry<FilePath, String>> folderItr = buildArtifactFolders.entrySet().iterator();
-      while (folderItr.hasNext()) {
-        Map.Entry<FilePath, String> artifact = folderItr.next();
-        FilePath path = artifact.getKey();
-        String folder = artifact.getValue();
-        String[] tags = getUploadTags(build, listener, path, index);
-        log(listener, "Uploading artifact "+path.getRemote());
-        response = mber.mkpath(folder);
-        String folderId = MberJSON.getString(response, "directoryId");
-        if (!folderId.isEmpty()) {
-          if (!isLink) {
-            response = mber.upload(path, folderId, path.getName(), tags, overwriteFiles, true);
-          } else {
-            response = mber.link(path, folderId, path.getName(), tags, overwriteFiles);
+      destinationFolders.add(buildArtifactFolders);
+      allFolders.addAll(buildArtifactFolders.values());
+    }
+
+    // Create every artifact folder up front, so shared folders are only created once.
+    Map<String, JSONObject> folderResponses = mber.mkpaths(allFolders);
+
+    // Read existing names once per folder, so known artifacts are replaced directly.
+    for (int index = 0; index < destinationFolders.size(); ++index) {
+      if (isOverwriteExistingFiles(index)) {
+        for (String folder : new LinkedHashSet<String>(destinationFolders.get(index).values())) {
+          JSONObject folderResponse = folderResponses.get(folder);
+          if (MberJSON.isSuccess(folderResponse)) {
+            mber.prefetchDocuments(MberJSON.getString(folderResponse, "directoryId"));
           }
         }
-        if (!response.getString("status").equals("Success")) {
+      }
+    }
+
+    // Start every upload across all destinations on a bounded pool owned by this
+    // step, so a build with lots of artifacts can't crowd out other builds' Mber
+    // calls. Results are collected in the same order the uploads were started,
+    // so errors are reported in order. Progress from parallel uploads would
+    // interleave, so it isn't shown.
+    int uploadCount = 0;
+    for (Map<FilePath, String> buildArtifactFolders : destinationFolders) {
+      uploadCount += buildArtifactFolders.size();
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(UPLOAD_THREADS, uploadCount)), new NamedThreadFactory("Mber artifact uploader"));
+    try {
+      List<Future<JSONObject>> uploads = new ArrayList<Future<JSONObject>>();
+      List<JSONObject> folders = new ArrayList<JSONObject>();
+      for (int index = 0; index < destinationFolders.size(); ++index) {
+        final boolean overwriteFiles = isOverwriteExistingFiles(index);
+        final boolean isLink = isLinkToLocalFiles(index);
+        for (Map.Entry<FilePath, String> artifact : destinationFolders.get(index).entrySet()) {
+          final FilePath path = artifact.getKey();
+          final String[] tags = getUploadTags(build, listener, path, index);
+          log(listener, "Uploading artifact "+path.getRemote());
+          JSONObject response = folderResponses.get(artifact.getValue());
+          final String folderId = MberJSON.getString(response, "directoryId");
+          Future<JSONObject> upload = null;
+          if (!folderId.isEmpty()) {
+            upload = executor.submit(new Callable<JSONObject>() {
+              public JSONObject call()
+              {
+                if (isLink) {
+                  return mber.link(path, folderId, path.getName(), tags, overwriteFiles);
+                }
+                return mber.upload(path, folderId, path.getName(), tags, overwriteFiles, false);
+              }
+            });
+          }
+          uploads.add(upload);
+          folders.add(response);
+        }
+      }
+
+      for (int i = 0; i < uploads.size(); ++i) {
+        JSONObject response = (uploads.get(i) != null) ? MberClient.await(uploads.get(i)) : folders.get(i);
+        if (!MberJSON.getString(response, "status").equals("Success")) {
           errors.add(MberJSON.getString(response, "error"));
         }
       }
     }
+    finally {
+      executor.shutdownNow();
+    }
 
     if (!errors.isEmpty()) {
       return fail(build, listener, mber, errors.join("\n"));
@@ -778,6 +838,30 @@ public class MberNotifier extends Notifier
       this.accessProfiles = accessProfiles;
     }
 
+    // Circuit breaker for each configured Mber URL, shown on the global configuration page.
+    public Map<String, CircuitBreaker> getCircuitBreakers()
+    {
+      Map<String, CircuitBreaker> breakers = new TreeMap<String, CircuitBreaker>();
+      for (MberAccessProfile profile : getAccessProfiles()) {
+        breakers.put(profile.getUrl(), profile.getCircuitBreaker());
+      }
+      return breakers;
+    }
+
+    // Request limiter for each access profile that has limits, shown on the
+    // global configuration page so time spent throttled is visible.
+    public Map<String, RequestLimiter> getRequestLimiters()
+    {
+      Map<String, RequestLimiter> limiters = new TreeMap<String, RequestLimiter>();
+      for (MberAccessProfile profile : getAccessProfiles()) {
+        RequestLimiter limiter = profile.getRequestLimiter();
+        if (limiter != null) {
+          limiters.put(profile.getName(), limiter);
+        }
+      }
+      return limiters;
+    }
+
     // Get an access profile by name. Returns null if a profile with the given name isn't found.
     public MberAccessProfile getAccessProfile(final String profileName)
     {
@@ -27,6 +27,7 @@ package org.jenkinsci.plugins.mber;
 import com.mber.client.BuildStatus;
 import com.mber.client.MberClient;
 import com.mber.client.MberJSON;
+import com.mber.client.NamedThreadFactory;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
@@ -36,11 +37,22 @@ import hudson.model.BuildListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
 import hudson.util.ListBoxModel;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import net.sf.json.JSONObject;
+import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 public class MberUploader extends Builder
@@ -64,9 +76,16 @@ public class MberUploader extends Builder
   private final boolean showProgress;
   private final boolean optional;
   private final int attempts;
+  // Version 1.6 uploads files in parallel. Older configurations load as zero, which uploads one at a time.
+  private final int concurrency;
 
-  @DataBoundConstructor
   public MberUploader(String accessProfileName, String buildArtifacts, String artifactFolder, String artifactTags, boolean overwriteExistingFiles, boolean linkToLocalFiles, boolean showProgress, boolean optional, int attempts)
+  {
+    this(accessProfileName, buildArtifacts, artifactFolder, artifactTags, overwriteExistingFiles, linkToLocalFiles, showProgress, optional, attempts, 1);
+  }
+
+  @DataBoundConstructor
+  public MberUploader(String accessProfileName, String buildArtifacts, String artifactFolder, String artifactTags, boolean overwriteExistingFiles, boolean linkToLocalFiles, boolean showProgress, boolean optional, int attempts, int concurrency)
   {
     this.accessProfileName = accessProfileName;
     this.buildArtifacts = buildArtifacts;
@@ -77,6 +96,7 @@ public class MberUploader extends Builder
     this.showProgress = showProgress;
     this.optional = optional;
     this.attempts = attempts;
+    this.concurrency = concurrency;
   }
 
   public String getAccessProfileName()
@@ -112,6 +132,11 @@ public class MberUploader extends Builder
     return this.attempts;
   }
 
+  public int getConcurrency()
+  {
+    return Math.max(this.concurrency, 1);
+  }
+
   public boolean isOverwriteExistingFiles()
   {
     return this.overwriteExistingFiles;
@@ -199,7 +224,7 @@ public class MberUploader extends Builder
         }
 
         // The access profile may have invalid credentials if it's being modified.
-        final MberClient mber = makeMberClient(listener, accessProfile);
+        final MberClient mber = makeMberClient(build, listener, accessProfile);
         log(listener, "Connecting to Mber at "+mber.getURL());
         final JSONObject response = mber.login(accessProfile.getUsername(), accessProfile.getPassword().getPlainText());
         if (!MberJSON.isSuccess(response)) {
@@ -217,8 +242,11 @@ public class MberUploader extends Builder
     }
 
     // If there's a Mber build associated with this Jenkins build, we can set
-    // upload directories on the Mber build.
-    if (build.getProject().getPublishersList().get(MberNotifier.class) != null) {
+    // upload directories on the Mber build. Earlier Mber steps in this build
+    // may have already found it.
+    final boolean hasMberBuild = build.getProject().getPublishersList().get(MberNotifier.class) != null;
+    final MberBuildContext context = hasMberBuild ? MberBuildContext.forBuild(build) : null;
+    if (hasMberBuild && MberJSON.getString(mber.toJSON(), "buildId").isEmpty()) {
 
       // Try to find the Mber project associated with this Jenkins job. The
       // notifier should have created this already.
@@ -278,89 +306,160 @@ public class MberUploader extends Builder
         log(listener, MberJSON.getString(response, "error"));
         return isOptional();
       }
+      context.setClient(mber.toJSON());
     }
 
-    // Upload files one at a time. Each file retries individually if it fails.
+    // Create every folder the files will be uploaded into before uploading
+    // anything. Folders shared by many files are only created once.
+    final Map<FilePath, String> fileFolders = new LinkedHashMap<FilePath, String>();
     for (final FilePath file : uploadableFiles) {
-      log(listener, "Uploading file %s", file.getRemote());
-
-      // Append the file's name to the list of tags.
-      ArrayList<String> tagList = new ArrayList<String>(fileTags);
-      tagList.add(file.getName());
-      final String[] tags = tagList.toArray(new String[tagList.size()]);
-
-      // Create the folder in Mber Drive where the file will be uploaded.
-      final String folder = resolveUploadDirectory(uploadFolder, workspace, file);
-      JSONObject response = new Retryable<JSONObject>(listener.getLogger(), getAttempts()) {
-        @Override
-        public JSONObject call()
-        {
-          final JSONObject response = mber.mkpath(folder);
-          if (MberJSON.isFailed(response)) {
-            final String error = MberJSON.getString(response, "error");
-            throw new RetryException(String.format("Failed to create Mber folder %s. %s", folder, error));
+      fileFolders.put(file, resolveUploadDirectory(uploadFolder, workspace, file));
+    }
+    final Set<String> folders = new LinkedHashSet<String>(fileFolders.values());
+    log(listener, "Creating %d Mber folders", folders.size());
+    final Map<String, JSONObject> folderResponses = new Retryable<Map<String, JSONObject>>(listener.getLogger(), getAttempts()) {
+      @Override
+      public Map<String, JSONObject> call()
+      {
+        final Map<String, JSONObject> responses = mber.mkpaths(folders);
+        for (final Map.Entry<String, JSONObject> response : responses.entrySet()) {
+          if (!MberJSON.isSuccess(response.getValue())) {
+            final String error = MberJSON.getString(response.getValue(), "error");
+            throw new RetryException(String.format("Failed to create Mber folder %s. %s", response.getKey(), error));
           }
-          return response;
         }
-      }.run();
-
-      // Bail if we couldn't create a folder to upload builds into.
-      final String directoryId = MberJSON.getString(response, "directoryId");
-      if (directoryId == null || directoryId.isEmpty()) {
-        log(listener, "Failed to create Mber folder %s", folder);
-        log(listener, MberJSON.getString(response, "error"));
-        return isOptional();
+        return responses;
       }
+    }.run();
 
-      // Associate the directory with the build in Mber.
-      if (build.getProject().getPublishersList().get(MberNotifier.class) != null) {
-        response = new Retryable<JSONObject>(listener.getLogger(), getAttempts()) {
+    // Bail if we couldn't create the folders to upload files into.
+    if (folderResponses == null) {
+      log(listener, "Failed to create Mber folders");
+      return isOptional();
+    }
+
+    // Associate every directory with the build in Mber in a single update.
+    if (hasMberBuild) {
+      final Map<String, String> newFolders = new LinkedHashMap<String, String>();
+      for (final String folder : folders) {
+        final String directoryId = MberJSON.getString(folderResponses.get(folder), "directoryId");
+        if (!directoryId.equals(context.getFolder(folder))) {
+          newFolders.put(folder, directoryId);
+        }
+      }
+      if (!newFolders.isEmpty()) {
+        final JSONObject response = new Retryable<JSONObject>(listener.getLogger(), getAttempts()) {
           @Override
           public JSONObject call()
           {
-            final JSONObject response = mber.setBuildDirectory(directoryId);
+            final JSONObject response = mber.setBuildDirectories(newFolders.values());
             if (MberJSON.isFailed(response)) {
               final String error = MberJSON.getString(response, "error");
-              throw new RetryException(String.format("Failed to update Mber build with folder %s. %s", folder, error));
+              throw new RetryException(String.format("Failed to update Mber build with %d folders. %s", newFolders.size(), error));
             }
             return response;
           }
         }.run();
 
-        // Bail if we couldn't associate the folder with a build in Mber.
+        // Bail if we couldn't associate the folders with a build in Mber.
         if (!MberJSON.isSuccess(response)) {
-          log(listener, "Failed to update Mber build with folder %s", folder);
+          log(listener, "Failed to update Mber build with folders %s", StringUtils.join(newFolders.keySet(), ", "));
           log(listener, MberJSON.getString(response, "error"));
           return isOptional();
         }
+        for (final Map.Entry<String, String> folder : newFolders.entrySet()) {
+          context.putFolder(folder.getKey(), folder.getValue());
+        }
+        context.setClient(mber.toJSON());
       }
+    }
 
-      // Upload the file to Mber, retrying as necessary.
-      response = new Retryable<JSONObject>(listener.getLogger(), getAttempts()) {
-        @Override
-        public JSONObject call()
-        {
-          JSONObject response;
-          if (isLinkToLocalFiles()) {
-            response = mber.link(file, directoryId, file.getName(), tags, isOverwriteExistingFiles());
-          }
-          else {
-            response = mber.upload(file, directoryId, file.getName(), tags, isOverwriteExistingFiles(), isShowProgress());  
-          }
-          if (!MberJSON.isSuccess(response) && !MberJSON.isAborted(response)) {
-            throw new RetryException(response.getString("error"));
+    // Read the names already in each folder once, so overwrites of known files
+    // can skip straight to replacing them. A failed read just falls back to the
+    // usual duplicate handling.
+    if (isOverwriteExistingFiles()) {
+      for (final String folder : folders) {
+        mber.prefetchDocuments(MberJSON.getString(folderResponses.get(folder), "directoryId"));
+      }
+    }
+
+    // Upload files on a bounded pool of threads. Each file retries individually
+    // if it fails. Uploading one file at a time logs straight to the build log.
+    // Parallel uploads log into a buffer per file instead, and buffers are
+    // written out in the same order as the files, so the build log reads as if
+    // they ran one at a time. Progress bars from parallel uploads would
+    // interleave, so they're only shown when uploading one file at a time.
+    final boolean buffered = getConcurrency() > 1;
+    final boolean showProgress = isShowProgress() && !buffered;
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(getConcurrency(), uploadableFiles.size()), new NamedThreadFactory("Mber file uploader"));
+    try {
+      final List<Future<JSONObject>> uploads = new ArrayList<Future<JSONObject>>();
+      final List<ByteArrayOutputStream> logs = new ArrayList<ByteArrayOutputStream>();
+      for (final FilePath file : uploadableFiles) {
+        // Append the file's name to the list of tags.
+        ArrayList<String> tagList = new ArrayList<String>(fileTags);
+        tagList.add(file.getName());
+        final String[] tags = tagList.toArray(new String[tagList.size()]);
+
+        final String directoryId = MberJSON.getString(folderResponses.get(fileFolders.get(file)), "directoryId");
+        final ByteArrayOutputStream log = (buffered) ? new ByteArrayOutputStream() : null;
+        logs.add(log);
+        uploads.add(executor.submit(new Callable<JSONObject>() {
+          public JSONObject call() throws Exception
+          {
+            final PrintStream logger = (log != null) ? new PrintStream(log, true, "UTF-8") : listener.getLogger();
+            logger.println(String.format("Uploading file %s", file.getRemote()));
+
+            // Upload the file to Mber, retrying as necessary.
+            return new Retryable<JSONObject>(logger, getAttempts()) {
+              @Override
+              public JSONObject call()
+              {
+                JSONObject response;
+                if (isLinkToLocalFiles()) {
+                  response = mber.link(file, directoryId, file.getName(), tags, isOverwriteExistingFiles());
+                }
+                else {
+                  response = mber.upload(file, directoryId, file.getName(), tags, isOverwriteExistingFiles(), showProgress);
+                }
+                if (!MberJSON.isSuccess(response) && !MberJSON.isAborted(response)) {
+                  throw new RetryException(response.getString("error"));
+                }
+                return response;
+              }
+            }.run();
           }
-          return response;
+        }));
+      }
+
+      for (int i = 0; i < uploads.size(); ++i) {
+        final JSONObject response = uploads.get(i).get();
+        if (logs.get(i) != null) {
+          listener.getLogger().print(logs.get(i).toString("UTF-8"));
         }
-      }.run();
 
-      // The upload's already been retried, so bail if it's not successful.
-      if (!MberJSON.isSuccess(response)) {
-        log(listener, "Failed to upload file %s", file);
-        log(listener, response.getString("error"));
-        return isOptional();
+        // The upload's already been retried, so bail if it's not successful.
+        if (!MberJSON.isSuccess(response)) {
+          log(listener, "Failed to upload file %s", uploadableFiles.get(i));
+          log(listener, (response != null) ? response.getString("error") : "");
+          return isOptional();
+        }
       }
     }
+    catch (final InterruptedException e) {
+      // Users may cancel the job instead of waiting for uploads to finish.
+      log(listener, "Uploads were interrupted.");
+      Thread.currentThread().interrupt();
+      return isOptional();
+    }
+    catch (final Exception e) {
+      log(listener, "Failed to upload files.");
+      log(listener, e.getLocalizedMessage());
+      return isOptional();
+    }
+    finally {
+      executor.shutdownNow();
+    }
 
     return true;
   }
@@ -430,9 +529,12 @@ public class MberUploader extends Builder
     return name;
   }
 
-  private MberClient makeMberClient(final BuildListener listener, final MberAccessProfile accessProfile)
+  // Picks up the client an earlier Mber step in this build saved, if it used the same profile settings.
+  private MberClient makeMberClient(final AbstractBuild build, final BuildListener listener, final MberAccessProfile accessProfile)
   {
-    final MberClient mber = new MberClient(accessProfile.getUrl(), accessProfile.getApplication());
+    final MberBuildContext context = MberBuildContext.find(build);
+    final JSONObject state = (context != null) ? context.getClient(accessProfile.getUrl(), accessProfile.getApplication()) : null;
+    final MberClient mber = (state != null) ? accessProfile.makeMberClient(state) : accessProfile.makeMberClient();
     mber.setListener(listener);
     return mber;
   }
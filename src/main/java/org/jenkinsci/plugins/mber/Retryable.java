@@ -24,6 +24,7 @@ THE SOFTWARE.
 */
 package org.jenkinsci.plugins.mber;
 
+import com.mber.client.TransactionScope;
 import java.io.PrintStream;
 
 // This implements an exponential backoff and retry algorithm with a signature
@@ -49,9 +50,17 @@ public abstract class Retryable<T> {
 
   protected abstract T call();
 
+  // Every attempt is the same operation, so Mber calls made on this thread
+  // reuse the transaction IDs from the first attempt.
   public T run()
   {
-    return retry(1);
+    TransactionScope.begin();
+    try {
+      return retry(1);
+    }
+    finally {
+      TransactionScope.end();
+    }
   }
 
   private T retry(final int attempt)
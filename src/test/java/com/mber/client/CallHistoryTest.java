@@ -0,0 +1,74 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.net.URI;
+import java.util.List;
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CallHistoryTest
+{
+  @Test
+  public void keepsTheMostRecentCalls() throws Exception
+  {
+    CallHistory history = new CallHistory(3);
+    for (int i = 0; i < 5; ++i) {
+      history.add(new CallRecord("GET", "/call/" + i, 200, i, 0, 0, null));
+    }
+
+    Assert.assertEquals("Held more records than its capacity", 3, history.size());
+    Assert.assertEquals("Lost count of calls", 5, history.getTotal());
+
+    List<CallRecord> records = history.toList();
+    Assert.assertEquals("Didn't keep the oldest remaining call first", "/call/2", records.get(0).path);
+    Assert.assertEquals("Didn't keep the newest call last", "/call/4", records.get(2).path);
+
+    CallHistory aggregate = new CallHistory(10);
+    aggregate.addAll(history);
+    Assert.assertEquals("Didn't copy records", 3, aggregate.size());
+    Assert.assertEquals("Didn't carry over dropped calls", 5, aggregate.getTotal());
+  }
+
+  @Test
+  public void recordsCompactCalls() throws Exception
+  {
+    URI uri = new URI("http://localhost:8089/service/json/data/directory/?access_token=MOCKACCESSTOKEN");
+    JSONObject success = MberJSON.success();
+    CallRecord record = CallRecord.fromCall(new HTTParty.Call("GET", uri, 200, null, success, 12, 0, 345));
+
+    Assert.assertEquals("Kept the query string", "http://localhost:8089/service/json/data/directory/", record.path);
+    Assert.assertEquals("Lost the latency", 12, record.latencyMillis);
+    Assert.assertEquals("Lost the response size", 345, record.responseBytes);
+    Assert.assertFalse("Marked a successful call as failed", record.isFailed());
+    Assert.assertNull("Kept the body of a successful call", record.body);
+
+    JSONObject failure = MberJSON.failed("Found 0 bytes");
+    record = CallRecord.fromCall(new HTTParty.Call("POST", uri, 406, null, failure, 5, 10, 20));
+    Assert.assertTrue("Didn't mark a failed call as failed", record.isFailed());
+    Assert.assertTrue("Didn't keep the body of a failed call", record.body.contains("Found 0 bytes"));
+  }
+}
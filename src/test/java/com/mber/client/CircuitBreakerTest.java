@@ -0,0 +1,120 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.io.InterruptedIOException;
+import java.io.IOException;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CircuitBreakerTest
+{
+  @Test
+  public void opensAfterFailures() throws Exception
+  {
+    CircuitBreaker breaker = new CircuitBreaker(50);
+
+    // A few failures among successes don't open the circuit.
+    for (int i = 0; i < 10; ++i) {
+      Assert.assertTrue("Blocked a request while closed", breaker.allowRequest());
+      breaker.record(i % 3 != 0, 10);
+    }
+    Assert.assertEquals("Opened with a low failure rate", CircuitBreaker.State.CLOSED, breaker.getState());
+
+    // Once most calls fail, requests stop going out.
+    for (int i = 0; i < 10; ++i) {
+      breaker.record(false, 10);
+    }
+    Assert.assertEquals("Didn't open with a high failure rate", CircuitBreaker.State.OPEN, breaker.getState());
+    Assert.assertFalse("Let a request through while open", breaker.allowRequest());
+
+    // After the cool down a single trial call is let through.
+    Thread.sleep(100);
+    Assert.assertEquals("Didn't go half open after the cool down", CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    Assert.assertTrue("Didn't let a trial request through", breaker.allowRequest());
+    Assert.assertFalse("Let a second trial request through", breaker.allowRequest());
+
+    // A failed trial opens it again, and a successful one closes it.
+    breaker.record(false, 10);
+    Assert.assertEquals("Didn't reopen after a failed trial", CircuitBreaker.State.OPEN, breaker.getState());
+    Thread.sleep(100);
+    Assert.assertTrue("Didn't let a trial request through", breaker.allowRequest());
+    breaker.record(true, 10);
+    Assert.assertEquals("Didn't close after a successful trial", CircuitBreaker.State.CLOSED, breaker.getState());
+    Assert.assertEquals("Kept old failures after closing", 0, breaker.getFailureRatePercent());
+  }
+
+  @Test
+  public void countsSlowCallsAsFailures() throws Exception
+  {
+    CircuitBreaker breaker = new CircuitBreaker(60000);
+    for (int i = 0; i < 10; ++i) {
+      Assert.assertTrue("Blocked a request while closed", breaker.allowRequest());
+      breaker.record(true, 60000);
+    }
+    Assert.assertEquals("Didn't open when every call was slow", CircuitBreaker.State.OPEN, breaker.getState());
+    Assert.assertTrue("Didn't report when requests resume", breaker.getRetryInMillis() > 0);
+  }
+
+  @Test
+  public void ignoresCanceledCalls() throws Exception
+  {
+    CircuitBreaker breaker = new CircuitBreaker(50);
+    Transport canceled = new CircuitBreakerTransport(new Transport() {
+      public String getName()
+      {
+        return "canceled";
+      }
+
+      public HTTParty.Call execute(final HttpUriRequest request, final HTTParty.BodyReader reader) throws IOException
+      {
+        throw new InterruptedIOException("Build was canceled");
+      }
+    }, breaker);
+
+    for (int i = 0; i < 20; ++i) {
+      try {
+        canceled.execute(new HttpGet("http://localhost:8089/"), null);
+        Assert.fail("Didn't pass on the interrupt");
+      }
+      catch (InterruptedIOException e) {
+      }
+    }
+    Assert.assertEquals("Opened because builds were canceled", CircuitBreaker.State.CLOSED, breaker.getState());
+    Assert.assertEquals("Counted canceled calls as failures", 0, breaker.getFailureRatePercent());
+
+    // A canceled trial call lets another trial through.
+    for (int i = 0; i < 10; ++i) {
+      breaker.record(false, 10);
+    }
+    Thread.sleep(100);
+    Assert.assertTrue("Didn't let a trial request through", breaker.allowRequest());
+    breaker.cancel();
+    Assert.assertEquals("Changed state after a canceled trial", CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    Assert.assertTrue("Didn't let another trial request through", breaker.allowRequest());
+  }
+}
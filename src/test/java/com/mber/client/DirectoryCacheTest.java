@@ -0,0 +1,94 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DirectoryCacheTest
+{
+  @Test
+  public void cachesDirectoriesByScope() throws Exception
+  {
+    DirectoryCache cache = new DirectoryCache();
+    cache.put("app", "jenkins/", "MOCKDIRECTORYID_AAAAAA");
+    Assert.assertEquals("Didn't cache a directory", "MOCKDIRECTORYID_AAAAAA", cache.get("app", "jenkins/"));
+    Assert.assertNull("Shared a directory across scopes", cache.get("other", "jenkins/"));
+    Assert.assertNull("Found a directory that wasn't cached", cache.get("app", "missing/"));
+  }
+
+  @Test
+  public void expiresDirectories() throws Exception
+  {
+    DirectoryCache cache = new DirectoryCache(50, 10);
+    cache.put("app", "jenkins/", "MOCKDIRECTORYID_AAAAAA");
+    Thread.sleep(100);
+    Assert.assertNull("Kept an expired directory", cache.get("app", "jenkins/"));
+    Assert.assertEquals("Didn't drop an expired directory", 0, cache.size());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedDirectories() throws Exception
+  {
+    DirectoryCache cache = new DirectoryCache(60000, 2);
+    cache.put("app", "a/", "MOCKDIRECTORYID_AAAAAA");
+    cache.put("app", "b/", "MOCKDIRECTORYID_BBBBBB");
+    cache.get("app", "a/");
+    cache.put("app", "c/", "MOCKDIRECTORYID_CCCCCC");
+    Assert.assertEquals("Grew past its size limit", 2, cache.size());
+    Assert.assertNotNull("Evicted a recently used directory", cache.get("app", "a/"));
+    Assert.assertNull("Didn't evict the least recently used directory", cache.get("app", "b/"));
+  }
+
+  @Test
+  public void invalidatesDirectoriesAndChildren() throws Exception
+  {
+    DirectoryCache cache = new DirectoryCache();
+    cache.put("app", "jenkins/", "MOCKDIRECTORYID_AAAAAA");
+    cache.put("app", "jenkins/job/", "MOCKDIRECTORYID_BBBBBB");
+    cache.put("app", "jenkins/job/1/", "MOCKDIRECTORYID_CCCCCC");
+    cache.put("app", "jenkins-other/", "MOCKDIRECTORYID_DDDDDD");
+
+    cache.invalidate("app", "MOCKDIRECTORYID_BBBBBB");
+    Assert.assertNull("Kept an invalidated directory", cache.get("app", "jenkins/job/"));
+    Assert.assertNull("Kept a child of an invalidated directory", cache.get("app", "jenkins/job/1/"));
+    Assert.assertNotNull("Dropped the parent of an invalidated directory", cache.get("app", "jenkins/"));
+    Assert.assertNotNull("Dropped an unrelated directory", cache.get("app", "jenkins-other/"));
+  }
+
+  @Test
+  public void removesExactEntries() throws Exception
+  {
+    DirectoryCache cache = new DirectoryCache();
+    cache.put("app", "foo", "MOCKPROJECTID_AAAAAAAA");
+    cache.put("app", "foobar", "MOCKPROJECTID_BBBBBBBB");
+    cache.put("other", "foo", "MOCKPROJECTID_AAAAAAAA");
+
+    cache.remove("app", "MOCKPROJECTID_AAAAAAAA");
+    Assert.assertNull("Kept a removed entry", cache.get("app", "foo"));
+    Assert.assertNotNull("Removed an entry sharing its prefix", cache.get("app", "foobar"));
+    Assert.assertNotNull("Removed an entry from another scope", cache.get("other", "foo"));
+  }
+}
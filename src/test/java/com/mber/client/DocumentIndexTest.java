@@ -0,0 +1,74 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DocumentIndexTest
+{
+  @Test
+  public void findsDocumentsByName() throws Exception
+  {
+    DocumentIndex index = new DocumentIndex();
+    for (int i = 0; i < 5000; ++i) {
+      index.put("file" + i + ".txt", "MOCKDOCUMENTID_" + i);
+    }
+    Assert.assertEquals("Lost documents while growing", 5000, index.size());
+    for (int i = 0; i < 5000; ++i) {
+      Assert.assertEquals("Didn't find a document", "MOCKDOCUMENTID_" + i, index.get("file" + i + ".txt"));
+    }
+    Assert.assertNull("Found a document that wasn't indexed", index.get("missing.txt"));
+  }
+
+  @Test
+  public void replacesDocumentsWithTheSameName() throws Exception
+  {
+    DocumentIndex index = new DocumentIndex();
+    index.put("file.txt", "MOCKDOCUMENTID_AAAAAA");
+    index.put("file.txt", "MOCKDOCUMENTID_BBBBBB");
+    Assert.assertEquals("Indexed a name twice", 1, index.size());
+    Assert.assertEquals("Didn't replace a document", "MOCKDOCUMENTID_BBBBBB", index.get("file.txt"));
+  }
+
+  @Test
+  public void buildsFromDirectoryDocuments() throws Exception
+  {
+    JSONArray documents = new JSONArray();
+    JSONObject file = new JSONObject();
+    file.put("name", "file.txt");
+    file.put("documentId", "MOCKDOCUMENTID_AAAAAA");
+    documents.add(file);
+    JSONObject unnamed = new JSONObject();
+    unnamed.put("documentId", "MOCKDOCUMENTID_BBBBBB");
+    documents.add(unnamed);
+
+    DocumentIndex index = DocumentIndex.fromDocuments(documents);
+    Assert.assertEquals("Indexed a document without a name", 1, index.size());
+    Assert.assertEquals("Didn't index a document", "MOCKDOCUMENTID_AAAAAA", index.get("file.txt"));
+  }
+}
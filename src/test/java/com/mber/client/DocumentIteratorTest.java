@@ -0,0 +1,117 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DocumentIteratorTest
+{
+  @Test
+  public void readsEveryPage() throws Exception
+  {
+    AtomicInteger pages = new AtomicInteger();
+    Assert.assertEquals("Didn't read every document", 250, count(pagedServer(250, pages)));
+    Assert.assertEquals("Didn't read a page at a time", 3, pages.get());
+  }
+
+  @Test
+  public void stopsWhenPagingIsIgnored() throws Exception
+  {
+    // More results than asked for means the whole set came back at once.
+    AtomicInteger pages = new AtomicInteger();
+    Assert.assertEquals("Didn't read every document", 250, count(unpagedServer(250, pages)));
+    Assert.assertEquals("Read the same documents again", 1, pages.get());
+
+    // Exactly a page of results looks paged until the offset is ignored.
+    pages.set(0);
+    Assert.assertEquals("Read the same documents again", 100, count(unpagedServer(100, pages)));
+    Assert.assertEquals("Didn't notice the offset was ignored", 2, pages.get());
+  }
+
+  @Test
+  public void stopsOnFailedPages() throws Exception
+  {
+    DocumentIterator documents = new DocumentIterator(null, new String[] { "test" }, 100) {
+      @Override
+      protected JSONObject fetchPage(final int offset, final int limit)
+      {
+        return (offset == 0) ? page(0, limit) : MberJSON.failed("Failed to read page");
+      }
+    };
+    Assert.assertEquals("Didn't read the pages before the failure", 100, count(documents));
+    Assert.assertEquals("Didn't keep the failed page", "Failed to read page", MberJSON.getString(documents.getFailure(), "error"));
+  }
+
+  private static int count(final DocumentIterator documents)
+  {
+    int count = 0;
+    while (documents.hasNext()) {
+      documents.next();
+      count += 1;
+    }
+    return count;
+  }
+
+  private static DocumentIterator pagedServer(final int total, final AtomicInteger pages)
+  {
+    return new DocumentIterator(null, new String[] { "test" }, 100) {
+      @Override
+      protected JSONObject fetchPage(final int offset, final int limit)
+      {
+        pages.incrementAndGet();
+        return page(offset, Math.min(limit, total - offset));
+      }
+    };
+  }
+
+  private static DocumentIterator unpagedServer(final int total, final AtomicInteger pages)
+  {
+    return new DocumentIterator(null, new String[] { "test" }, 100) {
+      @Override
+      protected JSONObject fetchPage(final int offset, final int limit)
+      {
+        pages.incrementAndGet();
+        return page(0, total);
+      }
+    };
+  }
+
+  private static JSONObject page(final int offset, final int size)
+  {
+    JSONArray results = new JSONArray();
+    for (int i = offset; i < offset + size; ++i) {
+      JSONObject document = new JSONObject();
+      document.put("documentId", "MOCKDOCUMENTID_" + i);
+      results.add(document);
+    }
+    JSONObject response = MberJSON.success();
+    response.put("results", results);
+    return response;
+  }
+}
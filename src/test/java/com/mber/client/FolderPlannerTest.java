@@ -0,0 +1,51 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FolderPlannerTest
+{
+  @Test
+  public void normalizesPaths() throws Exception
+  {
+    Assert.assertEquals("Didn't strip slashes", "a/b", FolderPlanner.normalize("/a//b/"));
+    Assert.assertEquals("Changed a normal path", "a/b", FolderPlanner.normalize("a/b"));
+  }
+
+  @Test
+  public void plansEachFolderOnce() throws Exception
+  {
+    FolderPlanner planner = new FolderPlanner();
+    planner.add("build/jenkins/job/1/bin");
+    planner.add("build/jenkins/job/1/lib");
+    planner.add("build/jenkins/job/1/bin");
+    planner.add("/build/jenkins/job/1/lib/");
+    planner.add("build/jenkins/other");
+    // build, jenkins, job, 1, bin, lib and other.
+    Assert.assertEquals("Planned a shared folder more than once", 7, planner.size());
+  }
+}
@@ -24,11 +24,18 @@ THE SOFTWARE.
 */
 
 package com.mber.client;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import net.sf.json.JSONObject;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
 
 public class HTTPartyTest
 {
+  @Rule
+  public WireMockRule wireMockRule = new WireMockRule(8089);
+
   @Test
   public void encodesURIComponents() throws Exception
   {
@@ -58,4 +65,52 @@ public class HTTPartyTest
     String expectedEncodedChangedSymbols = "%40%23%24%25%5E%26%2B%60%3D%7B%7D%7C%5B%5D%5C%3A%22%3B%3C%3E%3F%2C%2F";
     Assert.assertEquals("Encoding some symbols as URI components should change them", expectedEncodedChangedSymbols, encodedChangedSymbols);
   }
+
+  @Test
+  public void sendsRequestsOverEachTransport() throws Exception
+  {
+    JSONObject response = new JSONObject();
+    response.put("status", "Success");
+    JSONObject result = new JSONObject();
+    result.put("keep", "yes");
+    result.put("skip", "no");
+    response.put("result", result);
+
+    WireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/transport/?a=b"))
+      .willReturn(WireMock.aResponse()
+        .withStatus(200)
+        .withBody(response.toString())
+      )
+    );
+
+    JSONObject failure = new JSONObject();
+    failure.put("status", "NotAuthorized");
+
+    WireMock.stubFor(WireMock.post(WireMock.urlEqualTo("/transport/"))
+      .willReturn(WireMock.aResponse()
+        .withStatus(479)
+        .withBody(failure.toString())
+      )
+    );
+
+    JSONObject args = new JSONObject();
+    args.put("a", "b");
+
+    for (String name : new String[] { PooledTransport.NAME, URLConnectionTransport.NAME }) {
+      Transport transport = HTTParty.getTransport(name);
+      Assert.assertEquals("Looked up the wrong transport", name, transport.getName());
+
+      // Reads JSON responses, keeping only the requested fields.
+      HTTParty.Call call = HTTParty.getJSON(transport, "http://localhost:8089/transport/", args, "status", "result.keep");
+      Assert.assertEquals("Wrong status code over the "+name+" transport", 200, call.code);
+      Assert.assertEquals("Failed to read JSON over the "+name+" transport", "Success", call.json.getString("status"));
+      Assert.assertTrue("Dropped a requested field over the "+name+" transport", call.json.getJSONObject("result").has("keep"));
+      Assert.assertFalse("Kept a field that wasn't requested over the "+name+" transport", call.json.getJSONObject("result").has("skip"));
+
+      // Reads JSON from error responses too.
+      call = HTTParty.postJSON(transport, "http://localhost:8089/transport/", args);
+      Assert.assertEquals("Wrong status code over the "+name+" transport", 479, call.code);
+      Assert.assertEquals("Failed to read error JSON over the "+name+" transport", "NotAuthorized", call.json.getString("status"));
+    }
+  }
 }
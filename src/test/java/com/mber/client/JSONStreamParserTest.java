@@ -0,0 +1,75 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.io.StringReader;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JSONStreamParserTest
+{
+  @Test
+  public void parsesResponses() throws Exception
+  {
+    String response = "{\"status\":\"Success\",\"count\":3,\"big\":12345678901,\"ratio\":0.5,\"ok\":true,\"text\":\"a\\\"b\\u0041\\n\",\"list\":[1,{\"a\":\"b\"}],\"empty\":{}}";
+    JSONObject json = new JSONStreamParser(new StringReader(response)).readObject();
+    Assert.assertEquals("Failed to parse strings", "Success", json.getString("status"));
+    Assert.assertEquals("Failed to parse integers", 3, json.getInt("count"));
+    Assert.assertEquals("Failed to parse longs", 12345678901L, json.getLong("big"));
+    Assert.assertEquals("Failed to parse decimals", 0.5, json.getDouble("ratio"), 0.0);
+    Assert.assertTrue("Failed to parse booleans", json.getBoolean("ok"));
+    Assert.assertEquals("Failed to parse escapes", "a\"bA\n", json.getString("text"));
+    Assert.assertEquals("Failed to parse arrays", 2, json.getJSONArray("list").size());
+    Assert.assertEquals("Failed to parse nested objects", "b", json.getJSONArray("list").getJSONObject(1).getString("a"));
+    Assert.assertTrue("Failed to parse empty objects", json.getJSONObject("empty").isEmpty());
+  }
+
+  @Test
+  public void keepsOnlyRequestedFields() throws Exception
+  {
+    String response = "{\"status\":\"Success\",\"result\":{\"directoryId\":\"A\",\"description\":\"skip me\",\"documents\":[{\"name\":\"a.txt\",\"documentId\":\"B\",\"tags\":[\"x\",{\"y\":1}]}]}}";
+    JSONObject json = new JSONStreamParser(new StringReader(response), "status", "result.documents.name").readObject();
+    Assert.assertEquals("Dropped a requested field", "Success", json.getString("status"));
+
+    JSONObject result = json.getJSONObject("result");
+    Assert.assertFalse("Kept a field that wasn't requested", result.has("directoryId"));
+    Assert.assertFalse("Kept a field that wasn't requested", result.has("description"));
+
+    JSONArray documents = result.getJSONArray("documents");
+    Assert.assertEquals("Dropped array items", 1, documents.size());
+    Assert.assertEquals("Dropped a requested field inside an array", "a.txt", documents.getJSONObject(0).getString("name"));
+    Assert.assertFalse("Kept a field that wasn't requested inside an array", documents.getJSONObject(0).has("tags"));
+  }
+
+  @Test
+  public void reportsNonJSONResponses() throws Exception
+  {
+    JSONStreamParser parser = new JSONStreamParser(new StringReader("<html>Bad Gateway</html>"));
+    Assert.assertFalse("Treated HTML as JSON", parser.isObject());
+    Assert.assertEquals("Didn't keep the non-JSON response", "<html>Bad Gateway</html>", parser.readRemaining(1024));
+  }
+}
@@ -32,8 +32,12 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.Date;
+import java.util.Map;
+import java.util.List;
 import java.util.Stack;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONException;
@@ -54,6 +58,13 @@ public class MberClientTest extends MberTest
   @Rule
   public ErrorCollector collector = new ErrorCollector();
 
+  @Before
+  public void clearCaches()
+  {
+    // Caches are shared across clients, so start every test from a clean slate.
+    MberClient.clearCaches();
+  }
+
   @Before
   public void setupWireMock()
   {
@@ -84,6 +95,7 @@ public class MberClientTest extends MberTest
     response = new JSONObject();
     response.put("status", "Success");
     response.put("access_token", "MOCKACCESSTOKEN");
+    response.put("applicationId", "MOCKAPPLICATIONID");
 
     WireMock.stubFor(WireMock.post(WireMock.urlEqualTo("/service/json/oauth/accesstoken/"))
       .withRequestBody(WireMock.equalToJson(request.toString(), JSONCompareMode.LENIENT))
@@ -217,6 +229,38 @@ public class MberClientTest extends MberTest
       )
     );
 
+    // Provide an explicit Duplicate for project creation when the project already exists.
+    request = new JSONObject();
+    request.put("access_token", "MOCKACCESSTOKEN");
+    request.put("alias", "existing");
+
+    response = new JSONObject();
+    response.put("status", "Duplicate");
+
+    WireMock.stubFor(WireMock.post(WireMock.urlEqualTo("/service/json/build/project/"))
+      .withRequestBody(WireMock.equalToJson(request.toString(), JSONCompareMode.LENIENT))
+      .atPriority(1)
+      .willReturn(WireMock.aResponse()
+        .withStatus(200)
+        .withBody(response.toString())
+      )
+    );
+
+    // Provide an explicit Success for project read by alias.
+    response = new JSONObject();
+    response.put("status", "Success");
+    result = new JSONObject();
+    result.put("projectId", "MOCKEXISTINGPROJECTID");
+    response.put("result", result);
+
+    WireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/service/json/build/project/'existing?access_token=MOCKACCESSTOKEN"))
+      .atPriority(1)
+      .willReturn(WireMock.aResponse()
+        .withStatus(200)
+        .withBody(response.toString())
+      )
+    );
+
     // Provide a generic Failed catch all for build creation.
     response = new JSONObject();
     response.put("status", "Failed");
@@ -351,6 +395,77 @@ public class MberClientTest extends MberTest
       )
     );
 
+    // Provide a multipart upload session for files named parts.bin that ask for one.
+    request = new JSONObject();
+    request.put("access_token", "MOCKACCESSTOKEN");
+    request.put("directoryId", "MOCKDIRECTORYID_AAAAAA");
+    request.put("name", "parts.bin");
+
+    JSONArray parts = new JSONArray();
+    for (int i = 0; i < 2; ++i) {
+      JSONObject part = new JSONObject();
+      part.put("partNumber", i + 1);
+      part.put("url", getMberUrl() + "/uploads/parts/" + (i + 1));
+      part.put("offset", i * 16);
+      part.put("size", 16);
+      parts.add(part);
+    }
+
+    response = new JSONObject();
+    response.put("status", "Success");
+    response.put("url", getMberUrl() + "/uploads/parts/");
+    response.put("parts", parts);
+    response.put("completeUrl", getMberUrl() + "/uploads/parts/complete");
+
+    WireMock.stubFor(WireMock.post(WireMock.urlEqualTo("/service/json/data/upload/"))
+      .withRequestBody(WireMock.equalToJson(request.toString(), JSONCompareMode.LENIENT))
+      .withRequestBody(WireMock.containing("\"partSize\""))
+      .atPriority(1)
+      .willReturn(WireMock.aResponse()
+        .withStatus(200)
+        .withBody(response.toString())
+      )
+    );
+
+    // Parts must carry a checksum. The second part fails once, so uploads have to resume.
+    WireMock.stubFor(WireMock.put(WireMock.urlEqualTo("/uploads/parts/1"))
+      .withHeader("Content-MD5", WireMock.matching(".+"))
+      .atPriority(1)
+      .willReturn(WireMock.aResponse()
+        .withStatus(200)
+      )
+    );
+
+    WireMock.stubFor(WireMock.put(WireMock.urlEqualTo("/uploads/parts/2"))
+      .inScenario("Parts")
+      .whenScenarioStateIs(Scenario.STARTED)
+      .withHeader("Content-MD5", WireMock.matching(".+"))
+      .atPriority(1)
+      .willReturn(WireMock.aResponse()
+        .withStatus(500)
+        .withBody("Part was lost")
+      ).willSetStateTo("Retried")
+    );
+
+    WireMock.stubFor(WireMock.put(WireMock.urlEqualTo("/uploads/parts/2"))
+      .inScenario("Parts")
+      .whenScenarioStateIs("Retried")
+      .withHeader("Content-MD5", WireMock.matching(".+"))
+      .atPriority(1)
+      .willReturn(WireMock.aResponse()
+        .withStatus(200)
+      )
+    );
+
+    // The upload only completes once every part's been sent.
+    WireMock.stubFor(WireMock.post(WireMock.urlEqualTo("/uploads/parts/complete"))
+      .withRequestBody(WireMock.containing("\"partNumber\":2"))
+      .atPriority(1)
+      .willReturn(WireMock.aResponse()
+        .withStatus(200)
+      )
+    );
+
     // Provide a generic Failed catch all for document creation.
     response = new JSONObject();
     response.put("status", "Failed");
@@ -679,6 +794,88 @@ public class MberClientTest extends MberTest
     Assert.assertEquals("Login calls where not recorded", 2, mber.getCallHistory().size());
   }
 
+  @Test
+  public void retriesWithANewTokenWhenRejected() throws Exception
+  {
+    checkMberVariables();
+
+    // Provide a token that Mber rejects on the first login, and a new one after that.
+    JSONObject request = new JSONObject();
+    request.put("username", getMberUsername());
+    request.put("password", getMberPassword());
+    request.put("grant_type", "password");
+    request.put("client_id", getMberApplicationId());
+
+    JSONObject response = new JSONObject();
+    response.put("status", "Success");
+    response.put("access_token", "MOCKACCESSTOKEN");
+    response.put("applicationId", "MOCKAPPLICATIONID");
+
+    WireMock.stubFor(WireMock.post(WireMock.urlEqualTo("/service/json/oauth/accesstoken/"))
+      .inScenario("Tokens")
+      .whenScenarioStateIs(Scenario.STARTED)
+      .withRequestBody(WireMock.equalToJson(request.toString(), JSONCompareMode.LENIENT))
+      .atPriority(1)
+      .willReturn(WireMock.aResponse()
+        .withStatus(200)
+        .withBody(response.toString())
+      ).willSetStateTo("Refreshed")
+    );
+
+    response.put("access_token", "MOCKREFRESHEDTOKEN");
+
+    WireMock.stubFor(WireMock.post(WireMock.urlEqualTo("/service/json/oauth/accesstoken/"))
+      .inScenario("Tokens")
+      .whenScenarioStateIs("Refreshed")
+      .withRequestBody(WireMock.equalToJson(request.toString(), JSONCompareMode.LENIENT))
+      .atPriority(1)
+      .willReturn(WireMock.aResponse()
+        .withStatus(200)
+        .withBody(response.toString())
+      )
+    );
+
+    response = new JSONObject();
+    response.put("status", "NotAuthorized");
+
+    WireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/service/json/data/directory/''jenkins-mber-plugin%2F?access_token=MOCKACCESSTOKEN"))
+      .atPriority(1)
+      .willReturn(WireMock.aResponse()
+        .withStatus(401)
+        .withBody(response.toString())
+      )
+    );
+
+    response = new JSONObject();
+    response.put("status", "Success");
+    JSONObject result = new JSONObject();
+    result.put("directoryId", "MOCKDIRECTORYID_AAAAAA");
+    response.put("result", result);
+
+    WireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/service/json/data/directory/''jenkins-mber-plugin%2F?access_token=MOCKREFRESHEDTOKEN"))
+      .atPriority(1)
+      .willReturn(WireMock.aResponse()
+        .withStatus(200)
+        .withBody(response.toString())
+      )
+    );
+
+    MberClient mber = new MberClient(getMberUrl(), getMberApplicationId());
+    Assert.assertEquals("Failed to log into Mber", "Success", mber.login(getMberUsername(), getMberPassword()).getString("status"));
+
+    // The rejected call logs in again and is retried once with the new token.
+    JSONObject folder = mber.mkpath("jenkins-mber-plugin");
+    Assert.assertEquals("Didn't retry a call with a rejected token", "Success", folder.getString("status"));
+    Assert.assertEquals("Kept using a rejected token", "MOCKREFRESHEDTOKEN", mber.getAccessToken());
+
+    // There should be four calls.
+    // * 1 to get the access token
+    // * 1 rejected folder read
+    // * 1 to get a new access token
+    // * 1 retried folder read
+    Assert.assertEquals("Token refresh calls where not recorded", 4, mber.getCallHistory().size());
+  }
+
   @Test
   public void createsFolders() throws Exception
   {
@@ -715,6 +912,93 @@ public class MberClientTest extends MberTest
       // * 4 to check the aliases
       // * 2 to create the folders
       Assert.assertEquals("Successful directory create calls where not recorded", 9, mber.getCallHistory().size());
+
+      // Creating known folders again doesn't need any calls.
+      results.push(mber.mkpath("jenkins-mber-plugin/test/create"));
+      Assert.assertEquals("Failed to create a cached folder", "Success", results.peek().getString("status"));
+      assertNotEmpty("No directory ID found for a cached folder", results.peek().getString("directoryId"));
+      Assert.assertEquals("Made calls for cached folders", 9, mber.getCallHistory().size());
+    }
+    finally {
+      mberCleanup(results, mber.getURL(), "data/directory", "directoryId");
+    }
+  }
+
+  @Test
+  public void createsFolderTrees() throws Exception
+  {
+    checkMberVariables();
+    MberClient mber = new MberClient(getMberUrl(), getMberApplicationId());
+
+    Stack<JSONObject> results = new Stack<JSONObject>();
+
+    try {
+      results.push(mber.login(getMberUsername(), getMberPassword()));
+      Assert.assertEquals("Failed to log into while testing folder trees", "Success", results.peek().getString("status"));
+
+      // Shared parent folders are only created once for all the paths.
+      ArrayList<String> paths = new ArrayList<String>();
+      paths.add("jenkins-mber-plugin/test/a");
+      paths.add("jenkins-mber-plugin/test/b");
+      paths.add("/jenkins-mber-plugin//test/a/");
+      Map<String, JSONObject> folders = mber.mkpaths(paths);
+      Assert.assertEquals("Didn't return a response for every path", 3, folders.size());
+      for (String path : paths) {
+        results.push(folders.get(path));
+        Assert.assertEquals("Failed to create folder "+path, "Success", results.peek().getString("status"));
+        assertNotEmpty("No directory ID found for folder "+path, results.peek().getString("directoryId"));
+      }
+
+      // There should be nine calls.
+      // * 1 to get the access token
+      // * 1 to find the existing top level folder by its tick alias
+      // * 3 to find the existing test folder
+      // * 2 each to create the a and b folders
+      Assert.assertEquals("Shared folders were created more than once", 9, mber.getCallHistory().size());
+    }
+    finally {
+      mberCleanup(results, mber.getURL(), "data/directory", "directoryId");
+    }
+  }
+
+  @Test
+  public void forgetsMissingParentFolders() throws Exception
+  {
+    checkMberVariables();
+    MberClient mber = new MberClient(getMberUrl(), getMberApplicationId());
+
+    Stack<JSONObject> results = new Stack<JSONObject>();
+
+    try {
+      results.push(mber.login(getMberUsername(), getMberPassword()));
+      results.push(mber.mkpath("jenkins-mber-plugin/test/create"));
+      Assert.assertEquals("Failed to create folder", "Success", results.peek().getString("status"));
+
+      // Provide an explicit NotFound for creating a folder whose cached parent was deleted.
+      JSONObject request = new JSONObject();
+      request.put("access_token", "MOCKACCESSTOKEN");
+      request.put("alias", "jenkins-mber-plugin/test/gone/");
+
+      JSONObject response = new JSONObject();
+      response.put("status", "NotFound");
+
+      WireMock.stubFor(WireMock.post(WireMock.urlEqualTo("/service/json/data/directory/"))
+        .withRequestBody(WireMock.equalToJson(request.toString(), JSONCompareMode.LENIENT))
+        .atPriority(1)
+        .willReturn(WireMock.aResponse()
+          .withStatus(404)
+          .withBody(response.toString())
+        )
+      );
+
+      JSONObject missing = mber.mkpath("jenkins-mber-plugin/test/gone");
+      Assert.assertEquals("Created a folder under a missing parent", "NotFound", missing.getString("status"));
+
+      // The parent's cached ID was dropped, so it's looked up again.
+      int calls = mber.getCallHistory().size();
+      results.push(mber.mkpath("jenkins-mber-plugin/test/create"));
+      Assert.assertEquals("Failed to create folder after its parent went missing", "Success", results.peek().getString("status"));
+      Assert.assertTrue("Kept the cached ID of a missing parent", mber.getCallHistory().size() > calls);
     }
     finally {
       mberCleanup(results, mber.getURL(), "data/directory", "directoryId");
@@ -751,6 +1035,18 @@ public class MberClientTest extends MberTest
       Assert.assertEquals("Failed to create a Project with a description", "Success", results.peek().getString("status"));
       assertNotEmpty("No project ID found found when creating a Project with a description", results.peek().getString("projectId"));
 
+      // Known projects don't need any calls.
+      long calls = mber.getCallHistory().getTotal();
+      results.push(mber.mkproject("noodles", ""));
+      Assert.assertEquals("Failed to find a cached Project", "Success", results.peek().getString("status"));
+      Assert.assertEquals("Made calls for a cached Project", calls, mber.getCallHistory().getTotal());
+
+      // Existing projects are read by alias instead of listing every project.
+      results.push(mber.mkproject("existing", ""));
+      Assert.assertEquals("Failed to find an existing Project", "Success", results.peek().getString("status"));
+      Assert.assertEquals("Didn't read an existing Project by alias", "MOCKEXISTINGPROJECTID", results.peek().getString("projectId"));
+      Assert.assertEquals("Listed every Project to find an existing one", calls + 2, mber.getCallHistory().getTotal());
+
       // Fails to update a build if we don't have a build.
       results.push(mber.updateBuild("name", "description", BuildStatus.RUNNING));
       Assert.assertEquals("Accidentally set a Build status when updating a Build that doesn't exist", "Failed", results.peek().getString("status"));
@@ -779,6 +1075,19 @@ public class MberClientTest extends MberTest
       results.push(mber.mkpath("jenkins-mber-plugin/test/upload"));
       results.push(mber.setBuildDirectory(results.peek().getString("directoryId")));
       Assert.assertEquals("Failed to set a Build directory when updating a Build\n"+results.peek().toString(), "Success", results.peek().getString("status"));
+
+      // Directories already on the build don't need another update.
+      String directoryId = results.get(results.size() - 2).getString("directoryId");
+      calls = mber.getCallHistory().getTotal();
+      results.push(mber.setBuildDirectories(Arrays.asList(directoryId, directoryId)));
+      Assert.assertEquals("Failed to set a Build directory that's already set", "Success", results.peek().getString("status"));
+      Assert.assertEquals("Updated a Build with a directory it already had", calls, mber.getCallHistory().getTotal());
+
+      // Later updates, like the final status change, keep the build's directories.
+      results.push(mber.updateBuild("pasta", "is delicious", BuildStatus.COMPLETED, BuildStatus.FAILURE));
+      Assert.assertEquals("Failed to update a Build with directories", "Success", results.peek().getString("status"));
+      WireMock.verify(2, WireMock.putRequestedFor(WireMock.urlEqualTo("/service/json/build/build/MOCKBUILDID"))
+        .withRequestBody(WireMock.containing("\"directoryIds\":[\"" + directoryId + "\"]")));
     }
     finally {
       mberCleanup(results, mber.getURL(), "data/directory", "directoryId");
@@ -845,6 +1154,50 @@ public class MberClientTest extends MberTest
     }
   }
 
+  @Test
+  public void uploadsFilesInParts() throws Exception
+  {
+    checkMberVariables();
+    MberClient mber = new MberClient(getMberUrl(), getMberApplicationId());
+
+    Stack<JSONObject> results = new Stack<JSONObject>();
+
+    try {
+      File temp = File.createTempFile("jenkins-mber-plugin", "bin");
+      BufferedWriter io = new BufferedWriter(new FileWriter(temp));
+      io.write("This is a multipart upload test.");
+      io.close();
+
+      String[] tags = { "test" };
+
+      // Multipart uploads are off unless a threshold is set.
+      Assert.assertEquals("Multipart uploads are on by default", 0, mber.getMultipartThreshold());
+      mber.setMultipartThreshold(16);
+
+      results.push(mber.login(getMberUsername(), getMberPassword()));
+      results.push(mber.mkpath("jenkins-mber-plugin/test/upload"));
+      String uploadFolder = results.peek().getString("directoryId");
+
+      // Fails if a part can't be sent, but remembers the parts that were.
+      results.push(mber.upload(temp.getPath(), uploadFolder, "parts.bin", tags, false, false));
+      Assert.assertEquals("Uploaded file unexpectedly with a lost part", "Failed", results.peek().getString("status"));
+      assertNotEmpty("No error message found when a part was lost", results.peek().getString("error"));
+      Assert.assertEquals("Wrong number of completed parts", 1, results.peek().getJSONArray("completedParts").size());
+
+      // Retrying only sends the missing part, then completes the upload.
+      results.push(mber.upload(temp.getPath(), uploadFolder, "parts.bin", tags, false, false));
+      Assert.assertEquals("Failed to resume a multipart upload", "Success", results.peek().getString("status"));
+      Assert.assertEquals("Wrong number of completed parts", 2, results.peek().getJSONArray("completedParts").size());
+
+      WireMock.verify(1, WireMock.putRequestedFor(WireMock.urlEqualTo("/uploads/parts/1")));
+      WireMock.verify(2, WireMock.putRequestedFor(WireMock.urlEqualTo("/uploads/parts/2")));
+      WireMock.verify(1, WireMock.postRequestedFor(WireMock.urlEqualTo("/uploads/parts/complete")));
+    }
+    finally {
+      mberCleanup(results, mber.getURL(), "data/directory", "directoryId");
+    }
+  }
+
   @Test
   public void linksFiles() throws Exception
   {
@@ -882,6 +1235,16 @@ public class MberClientTest extends MberTest
       // Succeeds if the file already exists and is being overwritten.
       results.push(mber.link(linkPath, uploadFolder, linkName, tags, true));
       Assert.assertEquals("Failed to update file when linking a file that already exists", "Success", results.peek().getString("status"));      
+
+      // Overwrites known names without posting first once the folder's been read.
+      results.push(mber.prefetchDocuments(uploadFolder));
+      Assert.assertEquals("Failed to read names in the link folder", "Success", results.peek().getString("status"));
+      long calls = mber.getCallHistory().getTotal();
+      results.push(mber.link(linkPath, uploadFolder, linkName, tags, true));
+      Assert.assertEquals("Failed to update a known link", "Success", results.peek().getString("status"));
+      Assert.assertEquals("Posted a known link before updating it", calls + 1, mber.getCallHistory().getTotal());
+      List<CallRecord> history = mber.getCallHistory().toList();
+      Assert.assertEquals("Didn't update a known link directly", "PUT", history.get(history.size() - 1).method);
     }
     finally {
       mberCleanup(results, mber.getURL(), "data/directory", "directoryId");
@@ -1056,6 +1419,34 @@ public class MberClientTest extends MberTest
     }
   }
 
+  @Test
+  public void makesAsyncCalls() throws Exception
+  {
+    checkMberVariables();
+
+    final MberClient mber = new MberClient(getMberUrl(), getMberApplicationId());
+    final Stack<JSONObject> results = new Stack<JSONObject>();
+
+    try {
+      results.push(mber.login(getMberUsername(), getMberPassword()));
+      Assert.assertEquals("Failed to log into while testing async calls", "Success", results.peek().getString("status"));
+
+      // Independent calls can be in flight at the same time.
+      Future<JSONObject> folder = mber.mkpathAsync("jenkins-mber-plugin/test/async");
+      Future<JSONObject> document = mber.readDocumentAsync("MOCKDOCUMENTID_AAAAAAA");
+
+      results.push(MberClient.await(folder));
+      Assert.assertEquals("Failed to create a folder asynchronously", "Success", results.peek().getString("status"));
+      assertNotEmpty("No directory ID found when creating a folder asynchronously", results.peek().getString("directoryId"));
+
+      results.push(MberClient.await(document));
+      Assert.assertEquals("Failed to read a document asynchronously", "Success", results.peek().getString("status"));
+    }
+    finally {
+      mberCleanup(results, mber.getURL(), "data/directory", "directoryId");
+    }
+  }
+
   private void mberCleanup(final Stack<JSONObject> results, final String url, final String type, final String key)
   {
     String accessToken = null;
@@ -0,0 +1,149 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.lang.management.ManagementFactory;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import net.sf.json.JSONObject;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Assume;
+import org.junit.Test;
+
+// Measures time and bytes allocated per call for building requests, against
+// the implementations they replaced. This is skipped unless the mber.benchmark
+// property is set, e.g. mvn test -Dmber.benchmark=true
+public class RequestBenchmarkTest
+{
+  private final static int WARMUP_CALLS = 200000;
+  private final static int CALLS = 1000000;
+
+  @Test
+  public void comparesRequestConstruction() throws Exception
+  {
+    Assume.assumeTrue(Boolean.getBoolean("mber.benchmark"));
+
+    final String component = "jenkins-mber-plugin/test/build 42";
+    final JSONObject args = new JSONObject();
+    args.put("access_token", "MOCKACCESSTOKEN");
+    args.put("tags", "artifact,build-42");
+
+    measure("encodeURIComponent (URLEncoder)", new Callable<Object>() {
+      public Object call() throws Exception
+      {
+        return legacyEncodeURIComponent(component);
+      }
+    });
+    measure("encodeURIComponent", new Callable<Object>() {
+      public Object call() throws Exception
+      {
+        return HTTParty.encodeURIComponent(component);
+      }
+    });
+    measure("toQuery (concatenation)", new Callable<Object>() {
+      public Object call() throws Exception
+      {
+        return legacyToQuery(args);
+      }
+    });
+    measure("toQuery", new Callable<Object>() {
+      public Object call() throws Exception
+      {
+        return HTTParty.toQuery(args);
+      }
+    });
+    measure("baseUrlWithPath", new Callable<Object>() {
+      public Object call() throws Exception
+      {
+        return MberClient.baseUrlWithPath("https://member.firepub.net/", "service/json/data/directory/");
+      }
+    });
+    measure("generateTransactionId (UUID)", new Callable<Object>() {
+      public Object call() throws Exception
+      {
+        return legacyGenerateTransactionId();
+      }
+    });
+    measure("generateTransactionId", new Callable<Object>() {
+      public Object call() throws Exception
+      {
+        return MberClient.generateTransactionId();
+      }
+    });
+  }
+
+  private static void measure(final String label, final Callable<Object> call) throws Exception
+  {
+    for (int i = 0; i < WARMUP_CALLS; ++i) {
+      call.call();
+    }
+    long bytes = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < CALLS; ++i) {
+      call.call();
+    }
+    long nanos = System.nanoTime() - start;
+    bytes = allocatedBytes() - bytes;
+    System.out.println(String.format("%s: %.1f ns/call, %d bytes/call", label, (double)nanos / CALLS, bytes / CALLS));
+  }
+
+  // HotSpot tracks bytes allocated per thread, which is what JMH's GC profiler reports too.
+  private static long allocatedBytes()
+  {
+    return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static String legacyEncodeURIComponent(final String component) throws Exception
+  {
+    return URLEncoder.encode(component, "UTF-8")
+      .replace("%7E", "~")
+      .replace("%21", "!")
+      .replace("%28", "(")
+      .replace("%29", ")")
+      .replace("%27", "'")
+    ;
+  }
+
+  private static String legacyToQuery(final JSONObject json) throws Exception
+  {
+    String query = "";
+    for (Object key : json.keySet()) {
+      String value = json.getString((String)key);
+      query += (query.isEmpty() ? "?" : "&") + URLEncoder.encode((String)key, "UTF-8") + "=" + URLEncoder.encode(value, "UTF-8");
+    }
+    return query;
+  }
+
+  private static String legacyGenerateTransactionId()
+  {
+    UUID uuid = UUID.randomUUID();
+    ByteBuffer buffer = ByteBuffer.allocate(16);
+    buffer.putLong(uuid.getMostSignificantBits());
+    buffer.putLong(uuid.getLeastSignificantBits());
+    return new String(Base64.encodeBase64(buffer.array()));
+  }
+}
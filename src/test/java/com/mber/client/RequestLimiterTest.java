@@ -0,0 +1,106 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestLimiterTest
+{
+  @Test
+  public void limitsRequestRate() throws Exception
+  {
+    RequestLimiter limiter = new RequestLimiter(20, 0);
+
+    // A full second's worth of requests goes out right away.
+    long start = System.nanoTime();
+    for (int i = 0; i < 20; ++i) {
+      limiter.acquire();
+      limiter.release();
+    }
+    Assert.assertTrue("Throttled a burst within the limit", elapsedMillis(start) < 500);
+    Assert.assertEquals("Queued requests within the limit", 0, limiter.getQueuedRequests());
+
+    // Anything past that waits for tokens to refill.
+    start = System.nanoTime();
+    for (int i = 0; i < 10; ++i) {
+      limiter.acquire();
+      limiter.release();
+    }
+    Assert.assertTrue("Didn't throttle requests over the limit", elapsedMillis(start) >= 400);
+    Assert.assertTrue("Didn't count throttled requests as queued", limiter.getQueuedRequests() > 0);
+    Assert.assertTrue("Didn't track queue time", limiter.getQueueTimeMillis() >= 400);
+    Assert.assertEquals("Miscounted requests", 30, limiter.getRequests());
+  }
+
+  @Test
+  public void capsConcurrentRequests() throws Exception
+  {
+    final RequestLimiter limiter = new RequestLimiter(0, 2);
+    limiter.acquire();
+    limiter.acquire();
+
+    Thread waiting = new Thread() {
+      @Override
+      public void run()
+      {
+        try {
+          limiter.acquire();
+          limiter.release();
+        }
+        catch (InterruptedException e) {
+        }
+      }
+    };
+    waiting.start();
+
+    // The third request waits until one of the first two finishes.
+    waiting.join(200);
+    Assert.assertTrue("Went over the concurrent request limit", waiting.isAlive());
+
+    limiter.release();
+    waiting.join(5000);
+    Assert.assertFalse("Didn't let a request through after one finished", waiting.isAlive());
+    Assert.assertTrue("Didn't count the waiting request as queued", limiter.getQueuedRequests() > 0);
+    limiter.release();
+  }
+
+  @Test
+  public void sharesLimitersByKey() throws Exception
+  {
+    RequestLimiter limiter = RequestLimiter.forKey("RequestLimiterTest", 5, 2);
+    Assert.assertSame("Didn't share the limiter for a key", limiter, RequestLimiter.forKey("RequestLimiterTest", 5, 2));
+
+    RequestLimiter changed = RequestLimiter.forKey("RequestLimiterTest", 10, 2);
+    Assert.assertNotSame("Kept old limits after they changed", limiter, changed);
+    Assert.assertEquals("Didn't use the new limits", 10, changed.getRequestsPerSecond());
+  }
+
+  private static long elapsedMillis(final long start)
+  {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+}
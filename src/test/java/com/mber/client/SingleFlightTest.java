@@ -0,0 +1,139 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SingleFlightTest
+{
+  private static final int FOLLOWERS = 8;
+
+  @Test
+  public void coalescesConcurrentCalls() throws Exception
+  {
+    final SingleFlight<JSONObject> flight = new SingleFlight<JSONObject>(new SingleFlight.Copier<JSONObject>() {
+      public JSONObject copy(final JSONObject json)
+      {
+        return MberJSON.copy(json);
+      }
+    });
+    final AtomicInteger calls = new AtomicInteger();
+    final AtomicReference<JSONObject> shared = new AtomicReference<JSONObject>();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<JSONObject> call = new Callable<JSONObject>() {
+      public JSONObject call() throws Exception
+      {
+        calls.incrementAndGet();
+        started.countDown();
+        release.await();
+        JSONObject json = MberJSON.success();
+        json.put("directoryId", "MOCKDIRECTORYID_AAAAAA");
+        shared.set(json);
+        return json;
+      }
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(FOLLOWERS + 1);
+    try {
+      List<Future<JSONObject>> results = new ArrayList<Future<JSONObject>>();
+      results.add(executor.submit(flightFor(flight, "readdir", call)));
+      started.await();
+
+      // Everyone asking for the same key while the call is running waits on it.
+      for (int i = 0; i < FOLLOWERS; ++i) {
+        results.add(executor.submit(flightFor(flight, "readdir", call)));
+      }
+      Thread.sleep(100);
+      release.countDown();
+
+      Set<JSONObject> copies = Collections.newSetFromMap(new IdentityHashMap<JSONObject, Boolean>());
+      for (Future<JSONObject> result : results) {
+        JSONObject json = result.get();
+        Assert.assertEquals("Shared the wrong result", "MOCKDIRECTORYID_AAAAAA", json.getString("directoryId"));
+        copies.add(json);
+      }
+      Assert.assertEquals("Coalesced calls were made more than once", 1, calls.get());
+      Assert.assertEquals("Finished calls stayed in flight", 0, flight.size());
+      Assert.assertEquals("Callers shared the same copy of the result", results.size(), copies.size());
+      Assert.assertFalse("A caller got the shared result instead of a copy", copies.contains(shared.get()));
+
+      // Calls made after the flight lands start over.
+      flight.execute("readdir", call);
+      Assert.assertEquals("Finished calls were reused", 2, calls.get());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void sharesFailures() throws Exception
+  {
+    final SingleFlight<JSONObject> flight = new SingleFlight<JSONObject>(new SingleFlight.Copier<JSONObject>() {
+      public JSONObject copy(final JSONObject json)
+      {
+        return json;
+      }
+    });
+    try {
+      flight.execute("readdir", new Callable<JSONObject>() {
+        public JSONObject call() throws Exception
+        {
+          throw new IllegalStateException("Connection refused");
+        }
+      });
+      Assert.fail("Swallowed the call's exception");
+    }
+    catch (IllegalStateException e) {
+      Assert.assertEquals("Changed the call's exception", "Connection refused", e.getMessage());
+    }
+    Assert.assertEquals("Failed calls stayed in flight", 0, flight.size());
+  }
+
+  private static Callable<JSONObject> flightFor(final SingleFlight<JSONObject> flight, final String key, final Callable<JSONObject> call)
+  {
+    return new Callable<JSONObject>() {
+      public JSONObject call() throws Exception
+      {
+        return flight.execute(key, call);
+      }
+    };
+  }
+}
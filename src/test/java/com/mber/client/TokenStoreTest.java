@@ -0,0 +1,137 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TokenStoreTest
+{
+  @Test
+  public void reusesSuccessfulLogins() throws Exception
+  {
+    TokenStore store = new TokenStore();
+    AtomicInteger calls = new AtomicInteger();
+    String key = TokenStore.key("http://localhost:8089", "app", "user", "password");
+
+    Assert.assertEquals("Didn't log in", "MOCKACCESSTOKEN", store.login(key, loginFor(calls, "Success", null)).getString("access_token"));
+    Assert.assertEquals("Didn't reuse a token", "MOCKACCESSTOKEN", store.login(key, loginFor(calls, "Success", null)).getString("access_token"));
+    Assert.assertEquals("Logged in more than once", 1, calls.get());
+
+    // Different credentials get their own token.
+    store.login(TokenStore.key("http://localhost:8089", "app", "user", "other"), loginFor(calls, "Success", null));
+    Assert.assertEquals("Shared a token across credentials", 2, calls.get());
+  }
+
+  @Test
+  public void doesNotCacheFailedLogins() throws Exception
+  {
+    TokenStore store = new TokenStore();
+    AtomicInteger calls = new AtomicInteger();
+    String key = TokenStore.key("http://localhost:8089", "app", "user", "password");
+
+    store.login(key, loginFor(calls, "NotAuthorized", null));
+    store.login(key, loginFor(calls, "NotAuthorized", null));
+    Assert.assertEquals("Cached a failed login", 2, calls.get());
+    Assert.assertEquals("Kept a failed login", 0, store.size());
+  }
+
+  @Test
+  public void refreshesTokensBeforeTheyExpire() throws Exception
+  {
+    TokenStore store = new TokenStore(60000, 1000);
+    AtomicInteger calls = new AtomicInteger();
+    String key = TokenStore.key("http://localhost:8089", "app", "user", "password");
+
+    // A token that expires within the refresh margin is never handed out.
+    store.login(key, loginFor(calls, "Success", "1"));
+    Assert.assertNull("Handed out a token that's about to expire", store.get(key));
+    store.login(key, loginFor(calls, "Success", "3600"));
+    Assert.assertEquals("Didn't refresh an expiring token", 2, calls.get());
+    Assert.assertNotNull("Didn't keep a fresh token", store.get(key));
+  }
+
+  @Test
+  public void checksWhetherTokensAreFresh() throws Exception
+  {
+    TokenStore store = new TokenStore(60000, 1000);
+    AtomicInteger calls = new AtomicInteger();
+    String key = TokenStore.key("http://localhost:8089", "app", "user", "password");
+
+    Assert.assertFalse("Found a token that was never cached", store.isFresh(key, "MOCKACCESSTOKEN"));
+    store.login(key, loginFor(calls, "Success", "3600"));
+    Assert.assertTrue("Didn't find a fresh token", store.isFresh(key, "MOCKACCESSTOKEN"));
+    Assert.assertFalse("Matched a different token", store.isFresh(key, "SOMEOTHERTOKEN"));
+
+    store.invalidate(key, "MOCKACCESSTOKEN");
+    store.login(key, loginFor(calls, "Success", "1"));
+    Assert.assertFalse("Found a token that's about to expire fresh", store.isFresh(key, "MOCKACCESSTOKEN"));
+  }
+
+  @Test
+  public void invalidatesRejectedTokens() throws Exception
+  {
+    TokenStore store = new TokenStore();
+    AtomicInteger calls = new AtomicInteger();
+    String key = TokenStore.key("http://localhost:8089", "app", "user", "password");
+
+    store.login(key, loginFor(calls, "Success", null));
+    store.invalidate(key, "SOMEOTHERTOKEN");
+    Assert.assertNotNull("Dropped a token that wasn't rejected", store.get(key));
+    store.invalidate(key, "MOCKACCESSTOKEN");
+    Assert.assertNull("Kept a rejected token", store.get(key));
+  }
+
+  @Test
+  public void remembersClientIds() throws Exception
+  {
+    TokenStore store = new TokenStore();
+    Assert.assertNull("Found a client ID that wasn't set", store.getClientId("http://localhost:8089 app"));
+    store.setClientId("http://localhost:8089 app", "'app");
+    Assert.assertEquals("Didn't remember a client ID", "'app", store.getClientId("http://localhost:8089 app"));
+  }
+
+  private static Callable<JSONObject> loginFor(final AtomicInteger calls, final String status, final String expiresIn)
+  {
+    return new Callable<JSONObject>() {
+      public JSONObject call()
+      {
+        calls.incrementAndGet();
+        JSONObject response = new JSONObject();
+        response.put("status", status);
+        if (status.equals("Success")) {
+          response.put("access_token", "MOCKACCESSTOKEN");
+        }
+        if (expiresIn != null) {
+          response.put("expires_in", expiresIn);
+        }
+        return response;
+      }
+    };
+  }
+}
@@ -0,0 +1,103 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransactionScopeTest
+{
+  @Test
+  public void reusesTransactionIdsForTheSameCall() throws Exception
+  {
+    Assert.assertNull("Made a transaction ID outside of a scope", TransactionScope.transactionIdFor("upload", request("file.txt", "MOCKACCESSTOKEN")));
+
+    TransactionScope.begin();
+    try {
+      String first = TransactionScope.transactionIdFor("upload", request("file.txt", "MOCKACCESSTOKEN"));
+      Assert.assertNotNull("Didn't make a transaction ID in a scope", first);
+      Assert.assertEquals("Didn't reuse a transaction ID", first, TransactionScope.transactionIdFor("upload", request("file.txt", "MOCKACCESSTOKEN")));
+      Assert.assertEquals("Didn't ignore the access token", first, TransactionScope.transactionIdFor("upload", request("file.txt", "NEWACCESSTOKEN")));
+      Assert.assertFalse("Shared a transaction ID across requests", first.equals(TransactionScope.transactionIdFor("upload", request("other.txt", "MOCKACCESSTOKEN"))));
+      Assert.assertFalse("Shared a transaction ID across endpoints", first.equals(TransactionScope.transactionIdFor("link", request("file.txt", "MOCKACCESSTOKEN"))));
+
+      // Nested scopes share the outer scope's transaction IDs.
+      TransactionScope.begin();
+      try {
+        Assert.assertEquals("Didn't share a transaction ID with a nested scope", first, TransactionScope.transactionIdFor("upload", request("file.txt", "MOCKACCESSTOKEN")));
+      }
+      finally {
+        TransactionScope.end();
+      }
+      Assert.assertTrue("Ended the outer scope with the nested one", TransactionScope.isActive());
+    }
+    finally {
+      TransactionScope.end();
+    }
+    Assert.assertFalse("Didn't end the scope", TransactionScope.isActive());
+  }
+
+  @Test
+  public void sharesScopesWithWrappedCalls() throws Exception
+  {
+    final Callable<String> call = new Callable<String>() {
+      public String call()
+      {
+        return TransactionScope.transactionIdFor("upload", request("file.txt", "MOCKACCESSTOKEN"));
+      }
+    };
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Assert.assertNull("Made a transaction ID for a call wrapped outside of a scope", executor.submit(TransactionScope.wrap(call)).get());
+
+      TransactionScope.begin();
+      try {
+        String first = TransactionScope.transactionIdFor("upload", request("file.txt", "MOCKACCESSTOKEN"));
+        Assert.assertEquals("Didn't share the scope with another thread", first, executor.submit(TransactionScope.wrap(call)).get());
+        Assert.assertNull("Left the scope on the other thread", executor.submit(call).get());
+      }
+      finally {
+        TransactionScope.end();
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static JSONObject request(final String name, final String accessToken)
+  {
+    JSONObject data = new JSONObject();
+    data.put("name", name);
+    data.put("access_token", accessToken);
+    data.put("transactionId", MberClient.generateTransactionId());
+    return data;
+  }
+}
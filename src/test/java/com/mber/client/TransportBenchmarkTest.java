@@ -0,0 +1,123 @@
+/*
+The Jenkins Mber Plugin is free software distributed under the terms of the MIT
+license (http://opensource.org/licenses/mit-license.html) reproduced here:
+
+Copyright (c) 2013-2015 Mber
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+package com.mber.client;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+// Compares the two HTTP/1.1 transports, pooled and JVM, against a local
+// stand-in for Mber. This is skipped unless the mber.benchmark property is
+// set, e.g. mvn test -Dmber.benchmark=true
+public class TransportBenchmarkTest
+{
+  private final static int WARMUP_REQUESTS = 100;
+  private final static int REQUESTS = 1000;
+  private final static int THREADS = 16;
+
+  @Rule
+  public WireMockRule wireMockRule = new WireMockRule(8089);
+
+  @Test
+  public void comparesTransports() throws Exception
+  {
+    Assume.assumeTrue(Boolean.getBoolean("mber.benchmark"));
+
+    JSONObject response = new JSONObject();
+    response.put("status", "Success");
+    response.put("directoryId", "MOCKDIRECTORYID_AAAAAA");
+
+    WireMock.stubFor(WireMock.get(WireMock.urlMatching("/benchmark/.*"))
+      .willReturn(WireMock.aResponse()
+        .withStatus(200)
+        .withBody(response.toString())
+      )
+    );
+
+    for (String name : new String[] { PooledTransport.NAME, URLConnectionTransport.NAME }) {
+      Transport transport = HTTParty.getTransport(name);
+      sequential(transport, WARMUP_REQUESTS);
+
+      long start = System.nanoTime();
+      sequential(transport, REQUESTS);
+      report(name + " sequential", start);
+
+      start = System.nanoTime();
+      concurrent(transport, REQUESTS);
+      report(name + " with " + THREADS + " threads", start);
+    }
+  }
+
+  private void sequential(final Transport transport, final int requests) throws Exception
+  {
+    for (int i = 0; i < requests; ++i) {
+      request(transport, i);
+    }
+  }
+
+  private void concurrent(final Transport transport, final int requests) throws Exception
+  {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < requests; ++i) {
+        final int index = i;
+        results.add(executor.submit(new Callable<Integer>() {
+          public Integer call() throws Exception
+          {
+            return request(transport, index);
+          }
+        }));
+      }
+      for (Future<Integer> result : results) {
+        Assert.assertEquals("Benchmark request failed", 200, result.get().intValue());
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  private int request(final Transport transport, final int index) throws Exception
+  {
+    return HTTParty.getJSON(transport, "http://localhost:8089/benchmark/" + index, null, "status").code;
+  }
+
+  private void report(final String label, final long start)
+  {
+    double millis = (System.nanoTime() - start) / 1000000.0;
+    System.out.println(String.format("%s: %d requests in %.1f ms, %.3f ms per request", label, REQUESTS, millis, millis / REQUESTS));
+  }
+}
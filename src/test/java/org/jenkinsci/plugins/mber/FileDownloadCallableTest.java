@@ -24,15 +24,85 @@ THE SOFTWARE.
 */
 
 package org.jenkinsci.plugins.mber;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import hudson.FilePath;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import net.sf.json.JSONObject;
+import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 
 public class FileDownloadCallableTest {
+  private static final String CONTENT = "0123456789abcdefghij";
+  private static final String DOWNLOAD_URL = "http://localhost:8089/downloads/resume";
+
+  @Rule
+  public WireMockRule wireMockRule = new WireMockRule(8089);
+
+  @Before
+  public void setupWireMock()
+  {
+    // Provide the whole file, tagged with an ETag, for requests without a matching range.
+    WireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/downloads/resume"))
+      .atPriority(5)
+      .willReturn(WireMock.aResponse()
+        .withStatus(200)
+        .withHeader("ETag", "\"v1\"")
+        .withBody(CONTENT)
+      )
+    );
+
+    // Provide the rest of the file for ranges that match the current ETag.
+    WireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/downloads/resume"))
+      .withHeader("Range", WireMock.equalTo("bytes=10-"))
+      .withHeader("If-Range", WireMock.equalTo("\"v1\""))
+      .atPriority(1)
+      .willReturn(WireMock.aResponse()
+        .withStatus(206)
+        .withHeader("ETag", "\"v1\"")
+        .withHeader("Content-Range", "bytes 10-19/20")
+        .withBody(CONTENT.substring(10))
+      )
+    );
+  }
+
+  @Test
+  public void resumesDownloads() throws Exception
+  {
+    File temp = File.createTempFile("jenkins-mber-plugin", "txt");
+    File part = new File(temp.getPath() + ".part");
+    File validator = new File(temp.getPath() + ".part.validator");
+
+    // Downloads the whole file when there's nothing to resume.
+    JSONObject result = (new FileDownloadCallable(DOWNLOAD_URL)).invoke(temp, null);
+    Assert.assertEquals("Failed to download file", "Success", result.getString("status"));
+    Assert.assertEquals("Downloaded the wrong data", CONTENT, FileUtils.readFileToString(temp, "UTF-8"));
+    Assert.assertFalse("Left a partial file behind", part.exists());
+    Assert.assertFalse("Left a validator file behind", validator.exists());
+
+    // Only asks for the missing bytes when a partial file matches the server's ETag.
+    FileUtils.writeStringToFile(part, CONTENT.substring(0, 10), "UTF-8");
+    FileUtils.writeStringToFile(validator, "\"v1\"", "UTF-8");
+    result = (new FileDownloadCallable(DOWNLOAD_URL)).invoke(temp, null);
+    Assert.assertEquals("Failed to resume download", "Success", result.getString("status"));
+    Assert.assertEquals("Resumed download has the wrong data", CONTENT, FileUtils.readFileToString(temp, "UTF-8"));
+    WireMock.verify(1, WireMock.getRequestedFor(WireMock.urlEqualTo("/downloads/resume")).withHeader("Range", WireMock.equalTo("bytes=10-")));
+
+    // Starts over when the partial file came from a different version of the file.
+    FileUtils.writeStringToFile(part, "ZZZZZZZZZZ", "UTF-8");
+    FileUtils.writeStringToFile(validator, "\"v0\"", "UTF-8");
+    result = (new FileDownloadCallable(DOWNLOAD_URL)).invoke(temp, null);
+    Assert.assertEquals("Failed to restart download", "Success", result.getString("status"));
+    Assert.assertEquals("Restarted download has the wrong data", CONTENT, FileUtils.readFileToString(temp, "UTF-8"));
+    Assert.assertFalse("Left a partial file behind", part.exists());
+  }
+
   @Test
   public void handlesInvalidDownloads() throws Exception
   {
@@ -59,6 +129,21 @@ public class FileDownloadCallableTest {
     assertNotEmpty("No error message found", result.getString("error"));
   }
 
+  @Test
+  public void deletesPartialFiles() throws Exception
+  {
+    File temp = File.createTempFile("jenkins-mber-plugin", "txt");
+    File part = new File(temp.getPath() + ".part");
+    File validator = new File(temp.getPath() + ".part.validator");
+    FileUtils.writeStringToFile(part, CONTENT.substring(0, 10), "UTF-8");
+    FileUtils.writeStringToFile(validator, "\"v1\"", "UTF-8");
+
+    FileDownloadCallable.deletePartialFiles(new FilePath(temp));
+    Assert.assertFalse("Kept a partial file", part.exists());
+    Assert.assertFalse("Kept a validator file", validator.exists());
+    Assert.assertTrue("Deleted the downloaded file", temp.exists());
+  }
+
   private void assertNotEmpty(final String message, final String value)
   {
     Assert.assertNotNull(message, value);
@@ -25,9 +25,11 @@ THE SOFTWARE.
 
 package org.jenkinsci.plugins.mber;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Test;
@@ -60,6 +62,64 @@ public class FileUploadCallableTest
     assertNotEmpty("No error message found", result.getString("error"));
   }
 
+  @Test
+  public void resumesPartsByContent() throws Exception
+  {
+    File temp = File.createTempFile("jenkins-mber-plugin", "bin");
+    BufferedWriter io = new BufferedWriter(new FileWriter(temp));
+    io.write("This is a multipart upload test.");
+    io.close();
+
+    // A retried upload may hand out new part URLs. The server can't be reached,
+    // so only parts matched from the earlier attempt can succeed.
+    JSONArray parts = new JSONArray();
+    JSONArray completedParts = new JSONArray();
+    for (int i = 0; i < 2; ++i) {
+      JSONObject part = new JSONObject();
+      part.put("partNumber", i + 1);
+      part.put("url", "http://this.is.mber/parts/" + (i + 1));
+      part.put("offset", i * 16);
+      part.put("size", 16);
+      parts.add(part);
+
+      JSONObject done = new JSONObject();
+      done.put("partNumber", i + 1);
+      done.put("offset", i * 16);
+      done.put("size", 16);
+      done.put("md5", new FilePartEntity(temp, i * 16, 16).md5());
+      completedParts.add(done);
+    }
+
+    // Skips parts whose number, range, and checksum match, even with new URLs.
+    JSONObject result = (new FileUploadCallable("http://this.is.mber/parts/", null, parts, "", completedParts)).invoke(temp, null);
+    Assert.assertEquals("Uploaded parts that were already sent", "Success", result.getString("status"));
+    Assert.assertEquals("Wrong number of completed parts", 2, result.getJSONArray("completedParts").size());
+
+    // Sends parts again if the file changed since they were sent.
+    completedParts.getJSONObject(1).put("md5", "AAAAAAAAAAAAAAAAAAAAAA==");
+    result = (new FileUploadCallable("http://this.is.mber/parts/", null, parts, "", completedParts)).invoke(temp, null);
+    Assert.assertEquals("Skipped a part that changed", "Failed", result.getString("status"));
+    Assert.assertEquals("Wrong number of completed parts", 1, result.getJSONArray("completedParts").size());
+  }
+
+  @Test
+  public void sendsLoadedParts() throws Exception
+  {
+    File temp = File.createTempFile("jenkins-mber-plugin", "bin");
+    BufferedWriter io = new BufferedWriter(new FileWriter(temp));
+    io.write("This is a multipart upload test.");
+    io.close();
+
+    // A loaded part has the same checksum and body as one streamed from the file.
+    FilePartEntity streamed = new FilePartEntity(temp, 16, 16);
+    FilePartEntity loaded = new FilePartEntity(temp, 16, 16);
+    Assert.assertEquals("Loaded part has the wrong checksum", streamed.md5(), loaded.load());
+
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    loaded.writeTo(body);
+    Assert.assertEquals("Loaded part has the wrong body", "art upload test.", body.toString("US-ASCII"));
+  }
+
   private void assertNotEmpty(final String message, final String value)
   {
     Assert.assertNotNull(message, value);
@@ -24,14 +24,26 @@ THE SOFTWARE.
 */
 
 package org.jenkinsci.plugins.mber;
+import com.mber.client.CallHistory;
+import com.mber.client.CallRecord;
+import com.mber.client.MberClient;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
 import org.junit.Rule;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 public class MberNotifierTest
@@ -112,6 +124,69 @@ public class MberNotifierTest
     assertSame(before, after);
   }
 
+  @Test
+  public void testCallHistoryPerBuild() throws Exception
+  {
+    // Each build gets its own call history, and it's never saved with the build.
+    FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+    FreeStyleBuild first = jenkinsRule.buildAndAssertSuccess(project);
+    FreeStyleBuild second = jenkinsRule.buildAndAssertSuccess(project);
+
+    CallHistory history = MberCallHistoryAction.forBuild(first).getHistory();
+    history.add(new CallRecord("GET", "http://localhost:8089/service/json/data/directory/", 200, 10, 0, 100, null));
+    assertEquals("Call history wasn't kept with the build", 1, MberCallHistoryAction.forBuild(first).getHistory().size());
+    assertEquals("Builds shared a call history", 0, MberCallHistoryAction.forBuild(second).getHistory().size());
+
+    first.save();
+    String xml = new FilePath(new File(first.getRootDir(), "build.xml")).readToString();
+    assertFalse("Call history was saved with the build", xml.contains("service/json/data/directory"));
+
+    MberCallHistoryAction.clear(first);
+    assertNull("Call history wasn't cleared", first.getAction(MberCallHistoryAction.class));
+  }
+
+  @Test
+  public void testBuildContextPerBuild() throws Exception
+  {
+    // Each build gets its own Mber client state, and it's never saved with the build.
+    FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+    FreeStyleBuild first = jenkinsRule.buildAndAssertSuccess(project);
+    FreeStyleBuild second = jenkinsRule.buildAndAssertSuccess(project);
+
+    MberClient mber = new MberClient("http://localhost:8089", "'Mber");
+    MberBuildContext.forBuild(first).setClient(mber.toJSON());
+    MberBuildContext.forBuild(first).putFolder("/jenkins-mber-plugin/test/", "MOCKDIRECTORYID_AAAAAA");
+    assertNotNull("Client state wasn't kept with the build", MberBuildContext.forBuild(first).getClient("http://localhost:8089", "'Mber"));
+    assertNull("Client state was shared with a different application", MberBuildContext.forBuild(first).getClient("http://localhost:8089", "'Other"));
+    assertEquals("Folder wasn't kept with the build", "MOCKDIRECTORYID_AAAAAA", MberBuildContext.forBuild(first).getFolder("jenkins-mber-plugin/test"));
+    assertNull("Builds shared client state", MberBuildContext.find(second));
+    assertNull("Reading client state added it to the build", second.getAction(MberBuildContext.class));
+
+    first.save();
+    String xml = new FilePath(new File(first.getRootDir(), "build.xml")).readToString();
+    assertFalse("Client state was saved with the build", xml.contains("MOCKDIRECTORYID_AAAAAA"));
+
+    MberBuildContext.clear(first);
+    assertNull("Client state wasn't cleared", first.getAction(MberBuildContext.class));
+  }
+
+  @Test
+  public void testBuildContextClearedWhenBuildFinishes() throws Exception
+  {
+    // Client state saved by a build step is dropped once the build completes.
+    FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+    project.getBuildersList().add(new TestBuilder() {
+      @Override
+      public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+      {
+        MberBuildContext.forBuild(build).putFolder("/jenkins-mber-plugin/test/", "MOCKDIRECTORYID_AAAAAA");
+        return true;
+      }
+    });
+    FreeStyleBuild build = jenkinsRule.buildAndAssertSuccess(project);
+    assertNull("Client state was kept after the build finished", build.getAction(MberBuildContext.class));
+  }
+
   private MberNotifier.DescriptorImpl getGlobalConfig()
   {
     return jenkinsRule.getInstance().getDescriptorByType(MberNotifier.DescriptorImpl.class);
@@ -40,7 +40,7 @@ public class MberUploaderTest extends HudsonTestCase {
 
     // Add a new build step to the project and make sure its config saves and loads.
     final FreeStyleProject project = createFreeStyleProject();
-    final MberUploader before = new MberUploader(accessProfile.getName(), "files", "folder", "tags", true, true, true, true, 0);
+    final MberUploader before = new MberUploader(accessProfile.getName(), "files", "folder", "tags", true, true, true, true, 0, 4);
     project.getBuildersList().add(before);
     configRoundtrip(project);
     final MberUploader after = project.getBuildersList().get(MberUploader.class);
@@ -60,5 +60,10 @@ public class MberUploaderTest extends HudsonTestCase {
     uploader = new MberUploader(null, null, "", "", false, false, false, false, 0);
     assertEquals("Provide a default upload folder for empty values", MberUploader.getDefaultArtifactFolder(), uploader.getArtifactFolder());
     assertEquals("Provide default upload tags for empty values", MberUploader.getDefaultArtifactTags(), uploader.getArtifactTags());
+    assertEquals("Upload one file at a time by default", 1, uploader.getConcurrency());
+
+    // Make sure configs without a concurrency level upload one file at a time.
+    uploader = new MberUploader(null, null, "", "", false, false, false, false, 0, 0);
+    assertEquals("Upload one file at a time for unset values", 1, uploader.getConcurrency());
   }
 }
\ No newline at end of file
@@ -24,6 +24,7 @@ THE SOFTWARE.
 */
 
 package org.jenkinsci.plugins.mber;
+import com.mber.client.TransactionScope;
 import org.junit.Assert;
 import org.junit.Test;
 import java.util.Random;
@@ -85,6 +86,23 @@ public class RetryableTest {
     Assert.assertEquals("Retryables should retry a positive number of times", 3, absRetryable.callCount);
   }
 
+  @Test
+  public void sharesATransactionScopeAcrossAttempts() throws Exception
+  {
+    // Every attempt runs in the same transaction scope, which ends with the retryable.
+    final CountingRetryable scopedRetryable = new CountingRetryable(3) {
+      @Override
+      public Integer mockCall()
+      {
+        Assert.assertTrue("Attempts should run in a transaction scope", TransactionScope.isActive());
+        return null;
+      }
+    };
+    scopedRetryable.run();
+    Assert.assertEquals("Retryables should retry in a transaction scope", 3, scopedRetryable.callCount);
+    Assert.assertFalse("Transaction scopes should end with the retryable", TransactionScope.isActive());
+  }
+
   private abstract class CountingRetryable extends Retryable<Integer>
   {
     public int callCount;